@@ -0,0 +1,298 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Analyses positions from many games at once: every request is searched by {@link BetterAI} on a shared
+ * fork-join pool, with one searcher per worker thread, and all searchers share one transposition table and
+ * one evaluator. Every request has its own time limit, counted from when it is submitted, so a request that
+ * waits in the queue gets less time to search but is still answered in time. At most a fixed number of
+ * requests may be pending at once; more are rejected at once instead of queueing without bound.
+ *
+ * Requests are made in process with analyze, or over HTTP on localhost:
+ * <pre>
+ * GET /analyze?board=...&amp;player=1&amp;time=500
+ * GET /stats
+ * </pre>
+ * The board is given row by row from the top, a character per place: '.' for empty, 'b' for black and 'w'
+ * for white; its length gives the board size. The answer is a JSON object with the move in the usual
+ * notation (f5), its utility for the player in turn, the completed depth, the nodes and the milliseconds;
+ * 503 when too many requests are pending or the server is closed, and 400 for a bad request.
+ */
+public class AnalysisServer implements AutoCloseable {
+
+    /** The result of analysing one position */
+    public static class Analysis {
+        public final Position move;
+        public final double utility;    // For the player in turn, as BetterAI.getLastUtility
+        public final int depth;         // Completed depth, 0 for a book or solved move
+        public final long nodes;
+        public final long millis;       // From submission to answer
+
+        public Analysis(Position move, double utility, int depth, long nodes, long millis) {
+            this.move = move;
+            this.utility = utility;
+            this.depth = depth;
+            this.nodes = nodes;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * Valid arguments: [port] [threads] [maxPending] [tableBits]
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : 8642;
+        int threads = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxPending = args.length >= 3 ? Integer.parseInt(args[2]) : 1024;
+        int tableBits = args.length >= 4 ? Integer.parseInt(args[3]) : 24;
+        AnalysisServer server = new AnalysisServer(threads, maxPending,
+                new TranspositionTable(tableBits, TranspositionTable.Replacement.DEPTH_PREFERRED), BetterAI.defaultEvaluator());
+        server.listen(port);
+        System.out.println("Analysing on http://localhost:" + port + "/analyze with " + threads + " threads");
+    }
+
+    // A request that is queued or being searched; setting stop ends its search
+    private static class Request {
+        final CompletableFuture<Analysis> result = new CompletableFuture<Analysis>();
+        final AtomicBoolean stop = new AtomicBoolean();
+    }
+
+    private final ForkJoinPool pool;
+    private final Set<Request> requests = ConcurrentHashMap.newKeySet();   // Queued or being searched
+    private volatile boolean closed;
+    private final ThreadLocal<BetterAI> searchers;
+    private final int maxPending;
+    private final Semaphore capacity;       // One permit per request that may still be submitted
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong nodes = new AtomicLong();
+    private HttpServer http;
+    private ExecutorService httpThreads;
+
+    /**
+     * Creates a server that searches on the given number of threads with the given table and evaluator, and
+     * accepts at most maxPending requests that are queued or being searched.
+     */
+    public AnalysisServer(int threads, int maxPending, TranspositionTable table, Evaluator evaluator) {
+        pool = new ForkJoinPool(threads);
+        this.maxPending = maxPending;
+        capacity = new Semaphore(maxPending);
+        searchers = ThreadLocal.withInitial(() -> {
+            BetterAI ai = new BetterAI(0, 64, 1, false, table);
+            ai.setEvaluator(evaluator);
+            ai.setVerbose(false);
+            ai.setPondering(false);
+            return ai;
+        });
+    }
+
+    /**
+     * Analyses the given position, which must have a legal move, for at most the given time from now. The
+     * future fails with RejectedExecutionException if too many requests are pending or the server is closed.
+     */
+    public CompletableFuture<Analysis> analyze(GameState s, long timeMillis) {
+        if (!capacity.tryAcquire()) {
+            rejected.incrementAndGet();
+            return rejectedFuture("Too many pending requests");
+        }
+        Request request = new Request();
+        CompletableFuture<Analysis> result = request.result.whenComplete((analysis, error) -> {
+            requests.remove(request);
+            capacity.release();
+            if (error == null) completed.incrementAndGet();
+        });
+        requests.add(request);
+        if (closed) { // close() may not have seen the request
+            request.result.completeExceptionally(new RejectedExecutionException("The server is closed"));
+            return result;
+        }
+        GameState copy = s.copy();
+        long submitted = System.nanoTime();
+        long deadline = submitted + timeMillis * 1000000;
+        try {
+            pool.execute(() -> search(request, copy, deadline, submitted));
+        } catch (RejectedExecutionException e) { // The pool is shut down
+            request.result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private void search(Request request, GameState s, long deadline, long submitted) {
+        if (request.result.isDone()) return;
+        try {
+            BetterAI ai = searchers.get();
+            Position move = ai.decideMove(s, deadline, request.stop);
+            nodes.addAndGet(ai.getNodes());
+            request.result.complete(new Analysis(move, ai.getLastUtility(), ai.getLastDepth(), ai.getNodes(),
+                    (System.nanoTime() - submitted) / 1000000));
+        } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+        }
+    }
+
+    private static CompletableFuture<Analysis> rejectedFuture(String reason) {
+        CompletableFuture<Analysis> future = new CompletableFuture<Analysis>();
+        future.completeExceptionally(new RejectedExecutionException(reason));
+        return future;
+    }
+
+    /**
+     * Analyses all the given positions with the same time limit; the results are in the same order.
+     */
+    public List<CompletableFuture<Analysis>> analyzeAll(List<GameState> positions, long timeMillis) {
+        ArrayList<CompletableFuture<Analysis>> results = new ArrayList<CompletableFuture<Analysis>>(positions.size());
+        for (GameState s : positions) results.add(analyze(s, timeMillis));
+        return results;
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public long getNodes() {
+        return nodes.get();
+    }
+
+    public int getPending() {
+        return maxPending - capacity.availablePermits();
+    }
+
+    /**
+     * Starts answering requests over HTTP on the given port of localhost.
+     */
+    public void listen(int port) throws IOException {
+        http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        // The handlers only parse and submit; the answer is sent when the search completes
+        httpThreads = Executors.newFixedThreadPool(2);
+        http.setExecutor(httpThreads);
+        http.createContext("/analyze", this::handleAnalyze);
+        http.createContext("/stats", exchange -> send(exchange, 200, "{\"completed\":" + completed.get()
+                + ",\"rejected\":" + rejected.get() + ",\"pending\":" + getPending() + ",\"nodes\":" + nodes.get() + "}"));
+        http.start();
+    }
+
+    private void handleAnalyze(HttpExchange exchange) throws IOException {
+        GameState s;
+        long time;
+        try {
+            HashMap<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            s = parseBoard(query.get("board"), Integer.parseInt(query.getOrDefault("player", "1")));
+            time = Long.parseLong(query.getOrDefault("time", "1000"));
+            if (!s.hasLegalMove()) throw new IllegalArgumentException("The player in turn has no legal move");
+        } catch (RuntimeException e) {
+            send(exchange, 400, "{\"error\":" + quote(e.getMessage()) + "}");
+            return;
+        }
+        analyze(s, time).whenComplete((analysis, error) -> {
+            try {
+                Throwable cause = error != null && error.getCause() != null ? error.getCause() : error;
+                if (error == null) {
+                    send(exchange, 200, "{\"move\":\"" + notation(analysis.move) + "\",\"utility\":" + analysis.utility
+                            + ",\"depth\":" + analysis.depth + ",\"nodes\":" + analysis.nodes + ",\"millis\":" + analysis.millis + "}");
+                } else if (cause instanceof RejectedExecutionException) { // Too many pending requests, or closed
+                    send(exchange, 503, "{\"error\":" + quote(cause.getMessage()) + "}");
+                } else {
+                    send(exchange, 500, "{\"error\":" + quote(error.toString()) + "}");
+                }
+            } catch (IOException e) { // The client went away
+                exchange.close();
+            }
+        });
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    // The string as a JSON string
+    private static String quote(String s) {
+        return "\"" + String.valueOf(s).replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static HashMap<String, String> parseQuery(String query) {
+        HashMap<String, String> values = new HashMap<String, String>();
+        if (query == null) return values;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq < 0) continue;
+            try {
+                values.put(pair.substring(0, eq), URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            } catch (java.io.UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the state of the given board (row by row from the top: '.' empty, 'b' black, 'w' white) with
+     * the given player in turn. Throws IllegalArgumentException if it is not a square board of even size.
+     */
+    public static GameState parseBoard(String board, int player) {
+        if (board == null) throw new IllegalArgumentException("No board");
+        int size = (int) Math.round(Math.sqrt(board.length()));
+        if (size < 4 || size % 2 != 0 || size * size != board.length())
+            throw new IllegalArgumentException("Not a square board of even size: " + board.length() + " places");
+        if (player != 1 && player != 2) throw new IllegalArgumentException("No player " + player);
+        int[][] places = new int[size][size];
+        for (int row = 0; row < size; row++) {
+            for (int col = 0; col < size; col++) {
+                char c = board.charAt(row * size + col);
+                if (c == 'b') places[col][row] = 1;
+                else if (c == 'w') places[col][row] = 2;
+                else if (c != '.') throw new IllegalArgumentException("Not a place: " + c);
+            }
+        }
+        return GameState.fromBoard(places, player);
+    }
+
+    private static String notation(Position move) {
+        return (char) ('a' + move.col) + Integer.toString(move.row + 1);
+    }
+
+    /**
+     * Stops answering HTTP requests and stops the searches. The requests that are still queued or being
+     * searched fail with RejectedExecutionException, and so do all later ones.
+     */
+    public void close() {
+        closed = true;
+        if (http != null) {
+            http.stop(0);
+            httpThreads.shutdown();
+        }
+        for (Request request : requests) {
+            request.stop.set(true);
+            request.result.completeExceptionally(new RejectedExecutionException("The server is closed"));
+        }
+        pool.shutdownNow();
+    }
+}
@@ -1,9 +1,338 @@
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BetterAI implements IOthelloAI {
 
+    // Number of plies searched before the evaluation function is used when there is no time budget, on the
+    // 8x8 board. Larger boards have more moves per position, so depthForSize searches fewer plies there.
+    public static final int SEARCH_DEPTH = 8;
+    public static final int MIN_SEARCH_DEPTH = 3;
+    // The maxDepth that searches depthForSize plies for the size of the board searched
+    public static final int SCALED_DEPTH = 0;
+
+    // decideMove searches to depth 1, 2, ... up to maxDepth, but stops when the time budget per move
+    // is used up and then returns the best move of the last completed iteration. A budget of 0 means
+    // no limit. Set with the constructor or the system properties betterai.time (milliseconds) and
+    // betterai.depth. Without either the depth scales with the board size.
+    private final long timeBudgetMillis;
+    private final int maxDepth;
+
+    // With more than one thread the moves at the root are searched in parallel: the first move on the calling
+    // thread, and then the others on a pool of worker threads that share the transposition table (Young
+    // Brothers Wait). In deterministic mode the table is only used for move ordering, never to cut off the
+    // search, so the best move is the same as that of a single-threaded deterministic search to the same depth.
+    // Set with the constructor or the system properties betterai.threads and betterai.deterministic.
+    private final int threads;
+    private final boolean deterministic;
+    private ForkJoinPool pool;                                  // Created by the first parallel search, until close
+    private ThreadLocal<BetterAI> workers;                      // The searcher of each worker thread
+    private volatile boolean workerHorizonReached;
+
+    // On the 8x8 board, positions with at most this many empty places are solved exactly by the endgame
+    // solver instead of being searched with the evaluation function. With a time budget the solver gets at
+    // most half of it, and the normal search is used if it does not finish. Set with setEndgameEmpties or
+    // the system property betterai.endgame; 0 turns the solver off.
+    private int endgameEmpties = Integer.getInteger("betterai.endgame", 16);
+    private final EndgameSolver solver = new EndgameSolver();
+
+    // On the 8x8 board, positions in the opening book are played from the book without searching. The book is
+    // read from the file given by the system property betterai.book (book.bin by default) if it exists, and
+    // can be replaced or turned off (null) with setOpeningBook.
+    private static final OpeningBook DEFAULT_BOOK = loadBook(System.getProperty("betterai.book", "book.bin"));
+    private OpeningBook book = DEFAULT_BOOK;
+
+    // Evaluation function at the horizon. The pattern evaluator is used if the file given by the system
+    // property betterai.weights (weights.bin by default) exists, and the token and mobility heuristic
+    // otherwise. Set with setEvaluator.
+    private static final Evaluator DEFAULT_EVALUATOR = loadEvaluator(System.getProperty("betterai.weights", "weights.bin"));
+    private Evaluator evaluator = DEFAULT_EVALUATOR;
+
+    // Selective search (Multi-ProbCut, see ProbCut): at nodes searched with an empty window, a subtree that
+    // shallow searches show to almost certainly fail high or low is cut off. The checks are read from the file
+    // given by the system property betterai.probcut (probcut.txt by default) if it exists, and used on boards of
+    // the size they were fitted for. Without them, or with setSelective(false) or betterai.selective=false, the
+    // search is full width. The system property
+    // betterai.probcut.threshold sets how many standard errors the predicted value must be outside the window.
+    // What is cut off depends on the order of the moves, so selective search is off in deterministic mode.
+    private static final ProbCut DEFAULT_PROBCUT = loadProbCut(System.getProperty("betterai.probcut", "probcut.txt"));
+    private ProbCut probCut = DEFAULT_PROBCUT;
+    private boolean selective = Boolean.parseBoolean(System.getProperty("betterai.selective", "true"));
+    private double probCutThreshold = Double.parseDouble(System.getProperty("betterai.probcut.threshold", "1.5"));
+
+    // Late move reductions: at nodes searched with an empty window, the moves after the first LMR_MOVES are first
+    // searched one ply less deep, and again to the full depth only if they beat alpha. Set with
+    // setLateMoveReductions or the system property betterai.lmr; off by default, and in deterministic mode.
+    private boolean lateMoveReductions = Boolean.getBoolean("betterai.lmr");
+    private static final int LMR_MOVES = 3;
+    private static final int LMR_MIN_DRAFT = 3;
+
+    // State of the current search
+    private int searchDepth;            // Depth of the current iteration
+    private int rootTokens;             // Tokens on the board at the root, for the stage of a node
+    private long deadline;              // System.nanoTime() at which the search is stopped
+    private AtomicBoolean stop = new AtomicBoolean();   // Stops the search like the deadline when set
+    private volatile String progress = "";  // Result of the last completed iteration
+    private final SearchStats stats = new SearchStats();    // Counters of this thread's part of the search
+    private double lastUtility;         // Utility of the move returned by the last call to decideMove
+    private int lastDepth;              // Depth of the last iteration it completed, 0 for a book or solved move
+    private long horizonHits;           // Evaluations and cutoffs by unsolved table entries in the current
+                                        // iteration; 0 if its result is exact
+    private int[] principalVariation = new int[0];  // Best line of the last iteration, -1 for a pass
+    private int pvLength;
+    private int[][] pvTable = new int[0][];         // [depth] principal variation of the node being searched
+    private int[] pvLengths = new int[0];           // at every depth, from index depth to pvLengths[depth]
+    private boolean followPv;           // Whether the search is still on the leftmost path, where the previous
+                                        // iteration's principal variation is tried first
+
+    // From depth 2 on, every iteration first searches the window of the given width around the utility of
+    // the previous iteration (aspiration window), and is repeated with a wider window if the utility is outside
+    // it. Set with the system property betterai.aspiration; 0 searches every iteration with the full window.
+    private static final double ASPIRATION_WINDOW = Double.parseDouble(System.getProperty("betterai.aspiration", "0.05"));
+    private static final double INFINITY = Integer.MAX_VALUE;
+
+    // The counters of the last call to decideMove and of all calls together, on all threads. Both are
+    // registered as MBeans (BetterAI:type=SearchStats) when the system property betterai.jmx is true.
+    // decideMove prints its progress and counters unless the system property betterai.verbose is false
+    // or setVerbose turns it off.
+    private final SearchStats lastSearch = new SearchStats();
+    private final SearchStats allSearches = new SearchStats();
+    private static final boolean JMX = Boolean.getBoolean("betterai.jmx");
+    private static final java.util.concurrent.atomic.AtomicInteger instances = new java.util.concurrent.atomic.AtomicInteger();
+    private boolean registered;
+    private boolean verbose = Boolean.parseBoolean(System.getProperty("betterai.verbose", "true"));
+
+    // Pondering: after every move the AI guesses the opponent's reply from the principal variation and searches
+    // the position after it on a background thread, filling the shared transposition table, until the next call
+    // to decideMove or for at most the given time. If the guess was right, a ponder search that has finished is
+    // played at once, and otherwise the time it took is taken off the budget of the search that follows. A wrong
+    // guess cancels the pondering. Set with setPondering or the system properties betterai.ponder and
+    // betterai.ponder.limit (milliseconds).
+    private boolean pondering = Boolean.getBoolean("betterai.ponder");
+    private static final long PONDER_LIMIT_MILLIS = Long.getLong("betterai.ponder.limit", 60000);
+    private BetterAI ponderer;                      // Searches the guessed position, created with the thread
+    private ExecutorService ponderThread;
+    private GameState ponderedState;                // The guessed position, or null when not pondering
+    private CompletableFuture<Position> ponderResult;
+    private AtomicBoolean ponderStop;
+    private long ponderStart;
+    private long ponderHits;
+    private long ponderMisses;
+
+    // Killer moves, history and static place values for ordering the moves at every node
+    private final MoveOrdering ordering = new MoveOrdering();
+    // The move lists of the nodes, one per ply, filled without creating objects
+    private final MoveList.Pool moveLists = new MoveList.Pool();
+
+    // Scratch space for the keys of prioritizeMoves, reused at every node
+    private double[] orderingKeys = new double[0];
+    private double[] tieBreakKeys = new double[0];
+
+    // Transposition table shared by all searches of this AI. The size (2^bits entries) and the replacement
+    // policy can be set with the system properties betterai.tt.bits and betterai.tt.replacement.
+    private final TranspositionTable table;
+    private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+
+    public BetterAI() {
+        this(Long.getLong("betterai.time", 0));
+    }
+
+    public BetterAI(long timeBudgetMillis) {
+        this(timeBudgetMillis, Integer.getInteger("betterai.depth", timeBudgetMillis > 0 ? 64 : SCALED_DEPTH));
+    }
+
+    public BetterAI(long timeBudgetMillis, int maxDepth) {
+        this(timeBudgetMillis, maxDepth, Integer.getInteger("betterai.threads", 1), Boolean.getBoolean("betterai.deterministic"));
+    }
+
+    public BetterAI(long timeBudgetMillis, int maxDepth, int threads, boolean deterministic) {
+        this(timeBudgetMillis, maxDepth, threads, deterministic, new TranspositionTable(Integer.getInteger("betterai.tt.bits", 20),
+             TranspositionTable.Replacement.valueOf(System.getProperty("betterai.tt.replacement", "DEPTH_PREFERRED"))));
+    }
+
+    public BetterAI(long timeBudgetMillis, int maxDepth, int threads, boolean deterministic, TranspositionTable table) {
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.maxDepth = maxDepth;
+        this.threads = threads;
+        this.deterministic = deterministic;
+        this.table = table;
+    }
+
+    // A searcher for a worker thread of the given AI
+    private BetterAI(BetterAI parent) {
+        this(parent.timeBudgetMillis, parent.maxDepth, 1, parent.deterministic, parent.table);
+        evaluator = parent.evaluator;
+        probCut = parent.probCut;
+        selective = parent.selective;
+        probCutThreshold = parent.probCutThreshold;
+        lateMoveReductions = parent.lateMoveReductions;
+    }
+
+    // The number of plies searched on a board of the given size when the depth is not set: SEARCH_DEPTH on the
+    // 8x8 board and two plies less for every doubling of the size, as the number of moves grows with the edge
+    // of the region the tokens cover; on 16x16 that is 6 plies instead of a search 10 times as long.
+    public static int depthForSize(int size) {
+        if (size <= 8) return SEARCH_DEPTH;
+        int depth = (int) Math.round(SEARCH_DEPTH - 2 * Math.log(size / 8.0) / Math.log(2));
+        return Math.max(MIN_SEARCH_DEPTH, depth);
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return table;
+    }
+
+    public void setEndgameEmpties(int endgameEmpties) {
+        this.endgameEmpties = endgameEmpties;
+    }
+
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    private static OpeningBook loadBook(String fileName) {
+        java.io.File file = new java.io.File(fileName);
+        if (!file.isFile()) return null;
+        try {
+            return OpeningBook.open(file);
+        } catch (java.io.IOException e) {
+            System.err.println("BetterAI could not read the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // The evaluator that new AIs use: the pattern evaluator if its weights were found, else the heuristic
+    public static Evaluator defaultEvaluator() {
+        return DEFAULT_EVALUATOR;
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    public void setEvaluator(Evaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+
+    public ProbCut getProbCut() {
+        return probCut;
+    }
+
+    public void setProbCut(ProbCut probCut) {
+        this.probCut = probCut;
+    }
+
+    // Turns Multi-ProbCut on or off; off searches full width, for comparing the two
+    public void setSelective(boolean selective) {
+        this.selective = selective;
+    }
+
+    public boolean isSelective() {
+        return selective && !deterministic && probCut != null && !probCut.isEmpty();
+    }
+
+    public void setProbCutThreshold(double threshold) {
+        this.probCutThreshold = threshold;
+    }
+
+    public void setLateMoveReductions(boolean lateMoveReductions) {
+        this.lateMoveReductions = lateMoveReductions;
+    }
+
+    private static ProbCut loadProbCut(String fileName) {
+        java.io.File file = new java.io.File(fileName);
+        if (!file.isFile()) return null;
+        try {
+            return ProbCut.load(file);
+        } catch (java.io.IOException e) {
+            System.err.println("BetterAI could not read the ProbCut parameters: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Evaluator loadEvaluator(String fileName) {
+        java.io.File file = new java.io.File(fileName);
+        if (file.isFile()) {
+            try {
+                return PatternEvaluator.load(file);
+            } catch (java.io.IOException e) {
+                System.err.println("BetterAI could not read the evaluation weights: " + e.getMessage());
+            }
+        }
+        return new HeuristicEvaluator();
+    }
+
+    // Returns the utility for the player in turn of the move returned by the last call to decideMove
+    public double getLastUtility() {
+        return lastUtility;
+    }
+
+    // Returns the depth of the last iteration completed by the last call to decideMove, or 0 if the move came
+    // from the opening book or the endgame solver
+    public int getLastDepth() {
+        return lastDepth;
+    }
+
+    // Returns the number of nodes searched by the last call to decideMove, on all threads
+    public long getNodes() {
+        return lastSearch.getNodes();
+    }
+
+    // Returns the counters of the last call to decideMove
+    public SearchStats getLastSearchStats() {
+        return lastSearch;
+    }
+
+    // Returns the counters of all calls to decideMove so far
+    public SearchStats getSearchStats() {
+        return allSearches;
+    }
+
+    // Registers the counters as MBeans with the given name until close; returns false, with neither
+    // registered, if the name is taken
+    public boolean registerMBeans(String name) {
+        if (!lastSearch.register(name + " last")) return false;
+        if (!allSearches.register(name)) {
+            lastSearch.unregister();
+            return false;
+        }
+        registered = true;
+        return true;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    // Shuts down the worker threads of the parallel search and the pondering thread and drops their searchers,
+    // which would otherwise keep the AI and its transposition table reachable for as long as the threads live.
+    // A later search starts them again.
+    @Override
+    public void close() {
+        stopPondering();
+        if (registered) {
+            lastSearch.unregister();
+            allSearches.unregister();
+            registered = false;
+        }
+        if (pool != null) {
+            pool.shutdownNow();
+            pool = null;
+            workers = null;
+        }
+        if (ponderThread != null) {
+            ponderThread.shutdownNow();
+            ponderThread = null;
+            ponderer = null;
+        }
+    }
+
     //// Utility stuff here
     //
     public class Move {
@@ -16,14 +345,15 @@ public class BetterAI implements IOthelloAI {
         }
     }
 
+     // Returns a copy of s with the move made; the search itself uses makeMove/unmakeMove on one state
      public GameState result(GameState s, Position position) {
-         GameState newState = new GameState(s.getBoard(), s.getPlayerInTurn());
+         GameState newState = s.copy();
          newState.insertToken(position);
          return newState;
      }
 
      public GameState noMove(GameState s) {
-        GameState newState = new GameState(s.getBoard(), s.getPlayerInTurn());
+        GameState newState = s.copy();
         newState.changePlayer();
         return newState;
      }
@@ -42,83 +372,639 @@ public class BetterAI implements IOthelloAI {
          }
      }
 
+     // utility and hUtility are seen from player 2; the search sees utilities from the player in turn
+     private static double forSide(GameState s, double utilityForPlayer2) {
+         return s.getPlayerInTurn() == 2 ? utilityForPlayer2 : -utilityForPlayer2;
+     }
+
      //// Evaluation function starts here
      //
+     // Seen from player 2 like utility; see Evaluator
      public double hUtility(GameState s) {
-        // number of tokens for each player
-        int[] tokens = s.countTokens();
+        return evaluator.evaluate(s);
+    }
 
-        // number of available moves for each player
-        GameState nextS = noMove(s);
-        int movesP1;
-        int movesP2;
-        if (s.getPlayerInTurn() == 1) {
-            movesP1 = s.legalMoves().size();
-            movesP2 = nextS.legalMoves().size();
-        } else {
-            movesP1 = nextS.legalMoves().size();
-            movesP2 = s.legalMoves().size();
+    //// Negamax principal variation search starts here
+    //
+    // The search makes and takes back moves in a single state instead of copying it at every node, so s is
+    // the same after a call to negamax as before. Utilities are seen from the player in turn at the node.
+    //
+    // A node searched with the window [alpha, beta] returns its exact utility if that is inside the window,
+    // and otherwise a bound outside it: a node is only cut off when a move is strictly better than beta.
+    // The first move is searched with the full window and the others with the empty window [alpha, alpha],
+    // which only tells whether they beat the best move so far; one that does is searched again with the
+    // full window. Results are stored in the transposition table with the remaining depth, or as solved if
+    // the evaluation function was not used below the node, and the stored best move is tried first. The
+    // principal variation of the node is left in pvTable[depth].
+    public double negamax(GameState s, double alpha, double beta, int depth) {
+
+        countNode();
+        long horizonHitsBefore = horizonHits;
+        if (depth > stats.maxDepth) stats.maxDepth = depth;
+        if (depth >= pvLengths.length) growPv(depth);
+        pvLengths[depth] = depth;
+        MoveList moves = moveLists.get(depth);
+        s.legalMoves(moves);
+        if (moves.isEmpty()) {
+            s.pass();
+            double value;
+            if (!s.hasLegalMove()) {
+                value = -forSide(s, utility(s));
+            } else {
+                value = -negamax(s, -beta, -alpha, depth + 1);
+                updatePv(depth, -1);
+            }
+            s.unpass();
+            return value;
+        }
+        if (depth >= searchDepth) {
+            horizonHits++;
+            stats.leafEvaluations++;
+            return forSide(s, hUtility(s));
+        }
+
+        int draft = searchDepth - depth;
+        int size = s.getSize();
+        int tableMove = -1;
+        stats.tableProbes++;
+        if (table.probe(s.getHash(), entry)) {
+            stats.tableHits++;
+            tableMove = entry.move;
+            if (!deterministic && entry.depth >= draft
+                    && (entry.bound == TranspositionTable.EXACT
+                        || entry.bound == TranspositionTable.LOWER && entry.score > beta
+                        || entry.bound == TranspositionTable.UPPER && entry.score < alpha)) {
+                stats.tableCutoffs++;
+                if (entry.depth != TranspositionTable.SOLVED) horizonHits++;
+                return entry.score;
+            }
         }
 
-        // proportions
-        double totalSpace = s.getBoard().length * s.getBoard().length;
-        double tokensProportion = 0.1;
-        double movesProportion = 0.9;
+        if (alpha == beta && selective && probCut != null && probCut.getSize() == size && !deterministic) {
+            for (ProbCut.Cut cut : probCut.cuts(ProbCut.stage(rootTokens + depth, size), draft)) {
+                // The value of the full search is predicted as a*v + b from the value v of the shallow one
+                double margin = probCutThreshold * cut.sigma;
+                double high = (beta + margin - cut.b) / cut.a;
+                double v = searchToDraft(s, high, high, depth, cut.shallow);
+                if (v > high) {
+                    stats.probCuts++;
+                    horizonHits++;
+                    return cut.a * v + cut.b - margin;
+                }
+                double low = (alpha - margin - cut.b) / cut.a;
+                v = searchToDraft(s, low, low, depth, cut.shallow);
+                if (v < low) {
+                    stats.probCuts++;
+                    horizonHits++;
+                    return cut.a * v + cut.b + margin;
+                }
+            }
+        }
 
-        double hPlayer1 = tokens[0] * tokensProportion + movesP1 * movesProportion;
-        double hPlayer2 = tokens[1] * tokensProportion + movesP2 * movesProportion;
+        double alphaAtStart = alpha;
+        double bestValue = -INFINITY;
+        int best = -1;
+        int bestIndex = 0;
+        ordering.order(s, moves, firstMove(tableMove, depth), depth);
+        for (int i = 0; i < moves.size(); i++) {
+            int place = ordering.pick(moves, i, depth);
+            Position move = Position.at(place / size, place % size);
+            long undo = s.makeMove(move);
+            double value;
+            if (i == 0) {
+                value = -negamax(s, -beta, -alpha, depth + 1);
+            } else {
+                if (lateMoveReductions && alpha == beta && i >= LMR_MOVES && draft >= LMR_MIN_DRAFT && !deterministic) {
+                    stats.reductions++;
+                    value = -searchToDraft(s, -alpha, -alpha, depth + 1, draft - 2);
+                    if (value > alpha) value = -negamax(s, -alpha, -alpha, depth + 1);
+                } else {
+                    value = -negamax(s, -alpha, -alpha, depth + 1);
+                }
+                if (value > alpha && value <= beta) value = -negamax(s, -beta, -alpha, depth + 1);
+            }
+            s.unmakeMove(move, undo);
+            followPv = false;
+            if (value > bestValue) {
+                bestValue = value;
+                best = place;
+                bestIndex = i;
+                if (value >= alpha && value <= beta) updatePv(depth, place);
+            }
+            if (value > alpha) alpha = value;
+            if (alpha > beta) break;
+        }
+        ordering.update(s, best, depth, draft, alpha > beta);
+        stats.expanded(bestIndex, alpha > beta);
 
-        return (hPlayer2 - hPlayer1) / totalSpace;
+        int bound = bestValue > beta ? TranspositionTable.LOWER
+                  : bestValue < alphaAtStart ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+        int storedDepth = horizonHits == horizonHitsBefore ? TranspositionTable.SOLVED : draft;
+        table.store(s.getHash(), storedDepth, bound, bestValue, best);
+        return bestValue;
     }
 
-    //// MINIMAX with alpha-beta pruning starts here
-    //
-    public Move maxValue(GameState s, Position position, double bestValueforMAX, double bestValueforMIN, int depth) {
-
-        if (s.isFinished()) return new Move(utility(s), position);
-        if (s.legalMoves().isEmpty()) return minValue(noMove(s), position, bestValueforMAX, bestValueforMIN, depth + 1);
-        if (depth > 7) return new Move(hUtility(s), position);
-
-        Position prePosition;
-        Move newMove;
-        Move bestMove = new Move(Integer.MIN_VALUE, position);
-        for (Position move : prioritizeMoves(s)) {
-            if (position == null) prePosition = move; else prePosition = position;
-            newMove = minValue(result(s, move), prePosition, bestValueforMAX, bestValueforMIN, depth + 1);
-            if (position == null) System.out.println("" + prePosition + " utility: " + newMove.utility);
-            if (newMove.utility > bestMove.utility) bestMove = newMove;
-            if (newMove.utility > bestValueforMAX) bestValueforMAX = newMove.utility;
-            if (bestValueforMAX > bestValueforMIN) break;
+    // negamax of the node at the given depth, but searching only draft plies below it instead of to the depth
+    // of the iteration
+    private double searchToDraft(GameState s, double alpha, double beta, int depth, int draft) {
+        int iterationDepth = searchDepth;
+        searchDepth = depth + draft;
+        try {
+            return negamax(s, alpha, beta, depth);
+        } finally {
+            searchDepth = iterationDepth;
+        }
+    }
+
+    // The utility of s for the player in turn from a search to the given depth without a time limit, for tools
+    // that compare searches of different depths. The transposition table is used, so it should be cleared
+    // first when the value must not depend on earlier searches.
+    public double searchValue(GameState s, int depth) {
+        searchDepth = depth;
+        deadline = Long.MAX_VALUE;
+        stop = new AtomicBoolean();
+        followPv = false;
+        horizonHits = 0;
+        int[] tokens = s.countTokens();
+        rootTokens = tokens[0] + tokens[1];
+        ordering.newSearch(s.getSize());
+        GameState root = s.copy();
+        evaluator.attach(root);
+        return negamax(root, -INFINITY, INFINITY, 0);
+    }
+
+    // The principal variation at depth becomes the given move (-1 for a pass) followed by that at depth + 1
+    private void updatePv(int depth, int move) {
+        int end = pvLengths[depth + 1];
+        if (pvTable[depth].length < end) pvTable[depth] = java.util.Arrays.copyOf(pvTable[depth], end + 16);
+        pvTable[depth][depth] = move;
+        System.arraycopy(pvTable[depth + 1], depth + 1, pvTable[depth], depth + 1, end - depth - 1);
+        pvLengths[depth] = end;
+    }
+
+    private void growPv(int depth) {
+        int length = Math.max(depth + 2, 2 * pvLengths.length);
+        int[][] newTable = java.util.Arrays.copyOf(pvTable, length);
+        for (int i = pvTable.length; i < length; i++) newTable[i] = new int[i + 16];
+        pvTable = newTable;
+        pvLengths = java.util.Arrays.copyOf(pvLengths, length);
+    }
+
+    // Root of the search with the full window
+    public Move bestMove(GameState s) {
+        return bestMove(s, -INFINITY, INFINITY);
+    }
+
+    // Root of the search: like negamax, but remembers which move gave the best utility. If no move is inside
+    // the window [alpha, beta], the returned utility is only a bound and the search must be repeated with a
+    // wider window.
+    public Move bestMove(GameState s, double alpha, double beta) {
+        if (threads > 1) return parallelBestMove(s, alpha, beta);
+        if (pvLengths.length < 2) growPv(1);
+        pvLengths[0] = 0;
+        double alphaAtStart = alpha;
+        Move bestMove = new Move(-INFINITY, null);
+        int tableMove = table.probe(s.getHash(), entry) ? entry.move : -1;
+        MoveList moves = rootMoves(s, tableMove);
+        for (int i = 0; i < moves.size(); i++) {
+            Position move = moves.position(i, s.getSize());
+            long undo = s.makeMove(move);
+            double value;
+            if (i == 0) {
+                value = -negamax(s, -beta, -alpha, 1);
+            } else {
+                value = -negamax(s, -alpha, -alpha, 1);
+                if (value > alpha && value <= beta) value = -negamax(s, -beta, -alpha, 1);
+            }
+            s.unmakeMove(move, undo);
+            followPv = false;
+            if (value > bestMove.utility) {
+                bestMove.utility = value;
+                bestMove.position = move;
+                if (value >= alpha && value <= beta) updatePv(0, moves.get(i));
+            }
+            if (value > alpha) alpha = value;
+            if (alpha > beta) break;
         }
+        storeRoot(s, bestMove, alphaAtStart, beta);
         return bestMove;
     }
 
-    public Move minValue(GameState s, Position position, double bestValueforMAX, double bestValueforMIN, int depth) {
+    private void storeRoot(GameState s, Move bestMove, double alpha, double beta) {
+        int bound = bestMove.utility > beta ? TranspositionTable.LOWER
+                  : bestMove.utility < alpha ? TranspositionTable.UPPER : TranspositionTable.EXACT;
+        table.store(s.getHash(), searchDepth, bound, bestMove.utility,
+                bestMove.position.col * s.getSize() + bestMove.position.row);
+    }
+
+    // What a worker found for one root move: its utility and the principal variation after it
+    private static class RootResult {
+        final double utility;
+        final int[] line;
 
-        if (s.isFinished()) return new Move(utility(s), position);
-        if (s.legalMoves().isEmpty()) return maxValue(noMove(s), position, bestValueforMAX, bestValueforMIN, depth + 1);
-        if (depth > 7) return new Move(hUtility(s), position);
+        RootResult(double utility, int[] line) {
+            this.utility = utility;
+            this.line = line;
+        }
+    }
+
+    // Root of a parallel search. The first move is searched on this thread with the full window. The others are
+    // then searched by the workers, each with the best utility found so far as alpha. A move that does not beat
+    // that bound gets an upper bound below it, and every move that does gets its exact utility, so taking the
+    // first move with the highest utility gives the same move as the sequential search, whatever the timing.
+    private Move parallelBestMove(GameState s, double alpha, double beta) {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads);
+            workers = ThreadLocal.withInitial(() -> new BetterAI(this));
+        }
+        if (pvLengths.length < 2) growPv(1);
+        pvLengths[0] = 0;
+        int tableMove = table.probe(s.getHash(), entry) ? entry.move : -1;
+        MoveList moves = rootMoves(s, tableMove);
 
-        Position prePosition;
-        Move newMove;
-        Move bestMove = new Move(Integer.MAX_VALUE, position);
-        for (Position move : prioritizeMoves(s)) {
-            if (position == null) prePosition = move; else prePosition = position;
-            newMove = maxValue(result(s, move), prePosition, bestValueforMAX, bestValueforMIN, depth + 1);
-            if (newMove.utility < bestMove.utility) bestMove.utility = newMove.utility;
-            if (newMove.utility < bestValueforMIN) bestValueforMIN = newMove.utility;
-            if (bestValueforMAX > bestValueforMIN) break;
+        Position first = moves.position(0, s.getSize());
+        long undo = s.makeMove(first);
+        double firstValue = -negamax(s, -beta, -alpha, 1);
+        s.unmakeMove(first, undo);
+        followPv = false;
+        Move bestMove = new Move(firstValue, first);
+        if (firstValue >= alpha && firstValue <= beta) updatePv(0, moves.get(0));
+        if (firstValue > beta) {
+            storeRoot(s, bestMove, alpha, beta);
+            return bestMove;
         }
+
+        AtomicLong bound = new AtomicLong(Double.doubleToLongBits(Math.max(alpha, firstValue)));
+        ArrayList<Future<RootResult>> results = new ArrayList<Future<RootResult>>();
+        for (int i = 1; i < moves.size(); i++) {
+            Position move = moves.position(i, s.getSize());
+            GameState copy = s.copy();
+            evaluator.attach(copy);
+            results.add(pool.submit(() -> workers.get().searchRootMove(this, copy, move, bound, beta)));
+        }
+
+        boolean timedOut = false;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                RootResult result = results.get(i).get();
+                if (result.utility > bestMove.utility) {
+                    Position move = moves.position(i + 1, s.getSize());
+                    bestMove.utility = result.utility;
+                    bestMove.position = move;
+                    if (result.utility >= alpha && result.utility <= beta) {
+                        if (pvTable[0].length < result.line.length + 1)
+                            pvTable[0] = java.util.Arrays.copyOf(pvTable[0], result.line.length + 16);
+                        pvTable[0][0] = moves.get(i + 1);
+                        System.arraycopy(result.line, 0, pvTable[0], 1, result.line.length);
+                        pvLengths[0] = result.line.length + 1;
+                    }
+                }
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof SearchTimeout)) throw new RuntimeException(e.getCause());
+                timedOut = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+            }
+        }
+        if (timedOut) throw TIMEOUT;
+
+        storeRoot(s, bestMove, alpha, beta);
         return bestMove;
     }
 
+    // Searches one move at the root of the given AI's current iteration; runs on a worker thread
+    private RootResult searchRootMove(BetterAI parent, GameState s, Position move, AtomicLong alpha, double beta) {
+        ordering.newSearch(s.getSize());
+        searchDepth = parent.searchDepth;
+        rootTokens = parent.rootTokens;
+        deadline = parent.deadline;
+        stop = parent.stop;
+        followPv = false;
+        horizonHits = 0;
+        stats.reset();
+        try {
+            s.makeMove(move);
+            double a = Double.longBitsToDouble(alpha.get());
+            double value = -negamax(s, -a, -a, 1);
+            if (value > a && value <= beta) value = -negamax(s, -beta, -a, 1);
+            long bound;
+            while (value > Double.longBitsToDouble(bound = alpha.get())
+                    && !alpha.compareAndSet(bound, Double.doubleToLongBits(value))) {
+                // Another worker raised the bound in the meantime; try again
+            }
+            return new RootResult(value, java.util.Arrays.copyOfRange(pvTable[1], 1, pvLengths[1]));
+        } finally {
+            parent.stats.add(stats);
+            if (horizonHits > 0) parent.workerHorizonReached = true;
+        }
+    }
+
 	public Position decideMove(GameState s) {
-        System.out.println("BetterAI thinks...");
-        Move bestMove = maxValue(s, null, Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
-        System.out.println("BetterAI moves: " + bestMove.position + " Utility:  " + bestMove.utility);
+        return decideMove(s, defaultDeadline());
+    }
+
+    private long defaultDeadline() {
+        return timeBudgetMillis > 0 ? System.nanoTime() + timeBudgetMillis * 1000000 : Long.MAX_VALUE;
+    }
+
+    // Searches on the given executor. Cancelling the future stops the search within a few thousand nodes.
+    // Only one search of an AI may run at a time.
+    public CompletableFuture<Position> decideMoveAsync(GameState s, Executor executor) {
+        GameState copy = s.copy();
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletableFuture<Position> future = CompletableFuture.supplyAsync(() -> decideMove(copy, defaultDeadline(), stop), executor);
+        future.whenComplete((move, error) -> {
+            if (future.isCancelled()) stop.set(true);
+        });
+        return future;
+    }
+
+    // Returns the depth, best move and utility of the last iteration completed by the search in progress,
+    // or of the last search; safe to call from any thread
+    public String getProgress() {
+        return progress;
+    }
+
+    // Iterative deepening until maxDepth or the given deadline (in System.nanoTime()), whichever comes first
+    public Position decideMove(GameState s, long deadline) {
+        return decideMove(s, deadline, new AtomicBoolean());
+    }
+
+    // As above, but also stops when another thread sets stop
+    public Position decideMove(GameState s, long deadline, AtomicBoolean stop) {
+        if (verbose) System.out.println("BetterAI thinks...");
+        if (JMX && !registered) registerMBeans("BetterAI-" + instances.incrementAndGet());
+        long start = System.nanoTime();
+        stats.reset();
+        Position move = null;
+        if (ponderedState != null) {
+            boolean hit = samePosition(s, ponderedState);
+            boolean finished = ponderResult.isDone();
+            Position ponderMove = stopPondering();
+            long ponderTime = start - ponderStart;
+            if (hit) {
+                ponderHits++;
+                stats.add(ponderer.lastSearch);
+                if (finished || timeBudgetMillis > 0 && ponderTime >= timeBudgetMillis * 1000000) {
+                    move = ponderMove;
+                    lastUtility = ponderer.lastUtility;
+                    lastDepth = ponderer.lastDepth;
+                    principalVariation = ponderer.principalVariation.clone();
+                    pvLength = ponderer.pvLength;
+                    if (verbose) System.out.println("BetterAI pondered this position: " + move + " Utility:  " + lastUtility);
+                } else if (deadline != Long.MAX_VALUE) {
+                    deadline -= ponderTime;
+                }
+            } else {
+                ponderMisses++;
+            }
+        }
+        if (move == null) move = search(s, start, deadline, stop);
+        stats.searches = 1;
+        stats.elapsedNanos = System.nanoTime() - start;
+        lastSearch.set(stats);
+        allSearches.add(stats);
+        if (verbose) System.out.println(stats);
+        if (pondering && !stop.get()) startPondering(s, move);
+        return move;
+    }
+
+    public void setPondering(boolean pondering) {
+        this.pondering = pondering;
+        if (!pondering) stopPondering();
+    }
+
+    // Returns the number of moves for which the opponent's reply was guessed right and wrong while pondering
+    public long getPonderHits() {
+        return ponderHits;
+    }
+
+    public long getPonderMisses() {
+        return ponderMisses;
+    }
+
+    // Starts pondering on the position after the given move in s and the opponent's expected reply, if there is one
+    private void startPondering(GameState s, Position move) {
+        GameState guess = s.copy();
+        if (!guess.insertToken(move) || guess.isFinished()) return;
+        if (!guess.hasLegalMove()) { // The opponent must pass, so the position is known
+            guess.changePlayer();
+        } else {
+            int reply = pvLength > 1 ? principalVariation[1] : -1;
+            if (reply < 0 && table.probe(guess.getHash(), entry)) reply = entry.move;
+            if (reply < 0 || !guess.insertToken(Position.at(reply / guess.getSize(), reply % guess.getSize()))) return;
+            if (!guess.hasLegalMove()) return; // Not a position this AI is asked about
+        }
+
+        if (ponderer == null) {
+            ponderer = new BetterAI(this);
+            ponderer.book = book;
+            ponderer.endgameEmpties = endgameEmpties;
+            ponderer.verbose = false;
+            ponderer.pondering = false;
+            ponderThread = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "BetterAI ponder");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        long limit = System.nanoTime() + PONDER_LIMIT_MILLIS * 1000000;
+        ponderedState = guess;
+        ponderStop = stop;
+        ponderStart = System.nanoTime();
+        ponderResult = CompletableFuture.supplyAsync(() -> ponderer.decideMove(guess, limit, stop), ponderThread);
+    }
+
+    // Stops pondering, if it is going on, and returns the best move the ponder search found, or null
+    public Position stopPondering() {
+        if (ponderedState == null) return null;
+        ponderedState = null;
+        ponderStop.set(true);
+        try {
+            return ponderResult.join();
+        } catch (RuntimeException e) { // The ponder search failed; the normal search does the work
+            return null;
+        }
+    }
+
+    // Whether a and b have the same tokens on the board and the same player in turn
+    private static boolean samePosition(GameState a, GameState b) {
+        return a.getPlayerInTurn() == b.getPlayerInTurn() && a.getHash() == b.getHash()
+                && java.util.Arrays.deepEquals(a.getBoard(), b.getBoard());
+    }
+
+    private Position search(GameState s, long start, long deadline, AtomicBoolean stop) {
+        this.deadline = deadline;
+        this.stop = stop;
+        solver.setStopFlag(stop);
+        progress = "";
+        lastDepth = 0;
+        pvLength = 0;
+        table.newSearch();
+        ordering.newSearch(s.getSize());
+        int[] tokens = s.countTokens();
+        rootTokens = tokens[0] + tokens[1];
+
+        if (book != null && s instanceof BitBoardState) {
+            Position booked = bookMove((BitBoardState) s);
+            if (booked != null) return booked;
+        }
+        if (s instanceof BitBoardState && s.getSize() * s.getSize() - rootTokens <= endgameEmpties) {
+            Position solved = solveEndgame((BitBoardState) s, start, deadline);
+            if (solved != null) return solved;
+        }
+
+        GameState root = s.copy();
+        evaluator.attach(root);
+        Move bestMove = null;
+        int depthLimit = maxDepth == SCALED_DEPTH ? depthForSize(s.getSize()) : maxDepth;
+        for (searchDepth = 1; searchDepth <= depthLimit; searchDepth++) {
+            horizonHits = 0;
+            workerHorizonReached = false;
+            followPv = true;
+            try {
+                bestMove = aspirationSearch(root, bestMove);
+            } catch (SearchTimeout timeout) {
+                break;
+            }
+            pvLength = pvLengths[0];
+            if (principalVariation.length < pvLength) principalVariation = new int[pvLength];
+            System.arraycopy(pvTable[0], 0, principalVariation, 0, pvLength);
+            lastDepth = searchDepth;
+            progress = "depth " + searchDepth + ": " + bestMove.position + " utility " + String.format("%.3f", bestMove.utility);
+            if (verbose) System.out.println("Depth " + searchDepth + ": " + bestMove.position + " utility: "
+                    + bestMove.utility + " line: " + lineToString(root.getSize()));
+            // Without the evaluation function the result is exact and searching deeper changes nothing
+            if (horizonHits == 0 && !workerHorizonReached) break;
+            // The next iteration takes at least as long as all the previous ones together
+            long now = System.nanoTime();
+            if (deadline != Long.MAX_VALUE && now - start > deadline - now) break;
+        }
+        if (bestMove == null) { // Not even depth 1 was completed
+            bestMove = new Move(Integer.MIN_VALUE, prioritizeMoves(s.copy()).get(0));
+        }
+
+        lastUtility = bestMove.utility;
+        if (verbose) System.out.println("BetterAI moves: " + bestMove.position + " Utility:  " + bestMove.utility);
         return bestMove.position;
     }
 
+    // Returns the book move for the position, or null if it is not in the book
+    private Position bookMove(BitBoardState s) {
+        long own = s.getPlayerInTurn() == 1 ? s.getBlack() : s.getWhite();
+        long opp = s.getPlayerInTurn() == 1 ? s.getWhite() : s.getBlack();
+        int place = book.lookup(own, opp);
+        if (place < 0) return null;
+        Position move = Position.at(place / s.getSize(), place % s.getSize());
+        if (!s.legalMoves().contains(move)) return null; // A different position with the same key
+        lastUtility = book.getScore(book.indexOf(own, opp));
+        if (verbose) System.out.println("BetterAI plays from the opening book: " + move + " Utility:  " + lastUtility);
+        return move;
+    }
+
+    // Returns the move with the best exact result, or null if the solver did not finish in time
+    private Position solveEndgame(BitBoardState s, long start, long deadline) {
+        long solverDeadline = deadline == Long.MAX_VALUE ? deadline : start + (deadline - start) / 2;
+        try {
+            EndgameSolver.Result result = solver.solve(s, solverDeadline);
+            stats.nodes += solver.getNodes();
+            if (result.move == EndgameSolver.NO_MOVE) return null;
+            Position move = Position.at(result.move / s.getSize(), result.move % s.getSize());
+            lastUtility = Math.signum(result.score);
+            if (verbose) System.out.println("BetterAI solved the endgame: " + move + " disc differential: " + result.score);
+            return move;
+        } catch (EndgameSolver.Timeout timeout) {
+            stats.nodes += solver.getNodes();
+            if (verbose) System.out.println("BetterAI could not solve the endgame in time");
+            return null;
+        }
+    }
+
+    // Thrown out of the search when the deadline has passed. The searched state is then left as it was at
+    // that point, so decideMove searches a copy of the state it is given.
+    private static class SearchTimeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SearchTimeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final SearchTimeout TIMEOUT = new SearchTimeout();
+
+    private void countNode() {
+        if ((++stats.nodes & 1023) == 0 && (System.nanoTime() > deadline || stop.get())) throw TIMEOUT;
+    }
+
+    // Searches the root with an aspiration window around the utility of the previous iteration, widening the
+    // window on the failing side until the utility is inside it
+    private Move aspirationSearch(GameState root, Move previous) {
+        if (previous == null || ASPIRATION_WINDOW <= 0) return bestMove(root);
+        double delta = ASPIRATION_WINDOW;
+        double alpha = previous.utility - delta;
+        double beta = previous.utility + delta;
+        while (true) {
+            Move result = bestMove(root, alpha, beta);
+            if (result.utility >= alpha && result.utility <= beta) return result;
+            delta *= 2;
+            // Past the utilities of won and lost games the window is opened completely
+            if (result.utility < alpha) alpha = result.utility - delta < -1 ? -INFINITY : result.utility - delta;
+            else beta = result.utility + delta > 1 ? INFINITY : result.utility + delta;
+            followPv = true;
+        }
+    }
+
+    // The principal variation of the last completed iteration in the usual notation, "--" for a pass
+    private String lineToString(int size) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < pvLength; i++) {
+            int move = principalVariation[i];
+            if (move < 0) line.append("--");
+            else line.append((char) ('a' + move / size)).append(move % size + 1);
+        }
+        return line.toString();
+    }
+
+    // Returns the legal moves at the root in search order. When the position is symmetric, as the start position
+    // is, moves that a symmetry of the position maps to an earlier move lead to the same position up to symmetry
+    // and so have the same utility; only the first of them is searched.
+    private MoveList rootMoves(GameState s, int tableMove) {
+        MoveList moves = orderedMoves(s, tableMove, 0);
+        int invariants = Symmetry.invariants(s);
+        if (invariants == 1) return moves;
+        int distinct = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            int place = moves.get(i);
+            boolean seen = false;
+            for (int t = 1; t < Symmetry.COUNT && !seen; t++) {
+                if ((invariants & 1 << t) == 0) continue;
+                int image = Symmetry.transformPlace(place, t, s.getSize());
+                for (int j = 0; j < distinct && !seen; j++) seen = moves.get(j) == image;
+            }
+            if (!seen) moves.set(distinct++, place);
+        }
+        moves.truncate(distinct);
+        return moves;
+    }
+
+    // Returns the legal moves of s in search order, in the move list of the given ply: the transposition table
+    // move, or on the leftmost path the move of the previous iteration's principal variation, first, and then
+    // as MoveOrdering orders them
+    private MoveList orderedMoves(GameState s, int tableMove, int depth) {
+        MoveList moves = moveLists.get(depth);
+        s.legalMoves(moves);
+        ordering.order(s, moves, firstMove(tableMove, depth), depth);
+        for (int i = 0; i < moves.size(); i++) ordering.pick(moves, i, depth);
+        return moves;
+    }
+
+    // The move to try first at a node: the principal variation move on the leftmost path, else the table move
+    private int firstMove(int tableMove, int depth) {
+        return followPv && depth < pvLength && principalVariation[depth] >= 0 ? principalVariation[depth] : tableMove;
+    }
+
     //// Moves ordering heuristic starts here
     //
     public double distance(int boardSize, Position p) {
@@ -140,31 +1026,38 @@ public class BetterAI implements IOthelloAI {
         return ((x == 0 || x == boardSize - 1) && (y == 0 || y == boardSize - 1)); 
     }
 
-    // killer moves heuristic, best moves are tried first
+    // Orders the moves by looking one move ahead with the evaluation function. Too expensive for every node of
+    // the search, which uses MoveOrdering, but used for the fallback move when not even depth 1 was searched.
     public ArrayList<Position> prioritizeMoves(GameState s) {
-        
-        Comparator<Position> c = new Comparator<Position>() {
-            
-            public int compare(Position p1, Position p2) {
-                double c1 = orderingHeuristic(s.getBoard().length, p1);
-                double c2 = orderingHeuristic(s.getBoard().length, p2);
-                if(c1 > c2) return 1;
-                else if (c1 < c2) return -1;
-                c1 = hUtility(result(s, p1));
-                c2 = hUtility(result(s, p2));
-                if(c1 > c2) return 1;
-                else if (c1 < c2) return -1;
-                return 0;
-            }
-        };
+        return prioritizeMoves(s, s.legalMoves());
+    }
 
-        ArrayList<Position> moves = s.legalMoves();
-        Collections.sort(moves, c);
-        String str = "moves ";
-        for (Position position : moves) {
-            str = str + position + " ";
+    // Sorts the given legal moves of s in place. The keys of every move are computed once, making
+    // the move in s to evaluate it, and the moves are then insertion sorted on the keys.
+    public ArrayList<Position> prioritizeMoves(GameState s, ArrayList<Position> moves) {
+        int n = moves.size();
+        if (orderingKeys.length < n) {
+            orderingKeys = new double[n];
+            tieBreakKeys = new double[n];
+        }
+        for (int i = 0; i < n; i++) {
+            Position move = moves.get(i);
+            long undo = s.makeMove(move);
+            double c1 = orderingHeuristic(s.getSize(), move);
+            double c2 = hUtility(s);
+            s.unmakeMove(move, undo);
+
+            int j = i;
+            while (j > 0 && (orderingKeys[j - 1] > c1 || (orderingKeys[j - 1] == c1 && tieBreakKeys[j - 1] > c2))) {
+                orderingKeys[j] = orderingKeys[j - 1];
+                tieBreakKeys[j] = tieBreakKeys[j - 1];
+                moves.set(j, moves.get(j - 1));
+                j--;
+            }
+            orderingKeys[j] = c1;
+            tieBreakKeys[j] = c2;
+            moves.set(j, move);
         }
-        // System.out.println(str);
         return moves;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,303 @@
+import java.util.ArrayList;
+
+/**
+ * Implementation of {@link GameState} for the standard 8x8 board that keeps black and white tokens as two
+ * 64-bit bitboards. The place (col, row) is bit number col*8+row, so going through the bits of a board from
+ * the lowest to the highest visits the places in the same order as the array based implementation.
+ * Legal moves are generated for all 8 directions at once with Kogge-Stone fills, and tokens are turned
+ * with bit operations.
+ */
+public class BitBoardState extends GameState {
+	static final int SIZE = 8;
+
+	// Bits of the places in row 0 and row 7. Shifting by +-1 along a column wraps around between these.
+	static final long ROW_0 = 0x0101010101010101L;
+	static final long ROW_7 = 0x8080808080808080L;
+	static final long NOT_ROW_0 = ~ROW_0;
+	static final long NOT_ROW_7 = ~ROW_7;
+	static final long ALL = ~0L;
+
+	private long black; 	// Bit col*8+row is set if (col, row) holds a black token (player 1)
+	private long white; 	// Bit col*8+row is set if (col, row) holds a white token (player 2)
+
+	//************ Constructors ****************//
+	/**
+	 * Initializes an 8x8 board with the four tokens in the middle, as {@link GameState#GameState(int, int)}.
+	 * @param playerToStart The player who will go first. Should be 1 (black) or 2 (white).
+	 */
+	public BitBoardState(int playerToStart){
+		super(SIZE);
+		black = bit(3, 3) | bit(4, 4);
+		white = bit(3, 4) | bit(4, 3);
+		currentPlayer = playerToStart;
+		hash = computeHash();
+	}
+
+	/**
+	 * Constructs a new game state that equals the one represented by the supplied 8x8 board and player.
+	 * @param board Array of size 8x8 with values 0 (empty), 1 (black) or 2 (white).
+	 * @param playerToTakeTurn The player who will be the first to take a turn. Should be 1 (black) or 2 (white)
+	 */
+	public BitBoardState(int[][] board, int playerToTakeTurn){
+		super(SIZE);
+		for (int i = 0; i < SIZE; i++){
+			for (int j = 0; j < SIZE; j++){
+				if ( board[i][j] == 1 )
+					black |= bit(i, j);
+				else if ( board[i][j] == 2 )
+					white |= bit(i, j);
+			}
+		}
+		currentPlayer = playerToTakeTurn;
+		hash = computeHash();
+	}
+
+	/**
+	 * Constructs a new game state from the two bitboards and the player in turn.
+	 */
+	public BitBoardState(long black, long white, int playerToTakeTurn){
+		super(SIZE);
+		this.black = black;
+		this.white = white;
+		currentPlayer = playerToTakeTurn;
+		hash = computeHash();
+	}
+
+	@Override
+	public GameState copy(){
+		return new BitBoardState(black, white, currentPlayer);
+	}
+
+	@Override
+	protected long computeHash(){
+		long h = currentPlayer == 2 ? Zobrist.SIDE : 0;
+		for (long b = black; b != 0; b &= b - 1)
+			h ^= zobrist.black[Long.numberOfTrailingZeros(b)];
+		for (long w = white; w != 0; w &= w - 1)
+			h ^= zobrist.white[Long.numberOfTrailingZeros(w)];
+		return h;
+	}
+
+	//************ Getter methods *******************//
+	/**
+	 * Returns a new array with the tokens of this state. Changing it does not change the state.
+	 */
+	@Override
+	public int[][] getBoard(){
+		int[][] board = new int[SIZE][SIZE];
+		for (int i = 0; i < SIZE; i++){
+			for (int j = 0; j < SIZE; j++){
+				long b = bit(i, j);
+				if ( (black & b) != 0 )
+					board[i][j] = 1;
+				else if ( (white & b) != 0 )
+					board[i][j] = 2;
+			}
+		}
+		return board;
+	}
+
+	/**
+	 * Returns the bitboard of player 1 (black).
+	 */
+	public long getBlack(){
+		return black;
+	}
+
+	/**
+	 * Returns the bitboard of player 2 (white).
+	 */
+	public long getWhite(){
+		return white;
+	}
+
+	//************* Methods ****************//
+	@Override
+	public boolean isFinished(){
+		return moves(black, white) == 0 && moves(white, black) == 0;
+	}
+
+	@Override
+	public int[] countTokens(){
+		return new int[]{Long.bitCount(black), Long.bitCount(white)};
+	}
+
+	@Override
+	public long makeMove(Position place){
+		if ( place.col < 0 || place.row < 0 || place.col >= SIZE || place.row >= SIZE ) //not a position on the board
+			return 0;
+		long move = bit(place.col, place.row);
+		if ( ((black | white) & move) != 0 ) // The position is not empty
+			return 0;
+
+		long own = currentPlayer == 1 ? black : white;
+		long opp = currentPlayer == 1 ? white : black;
+		long flips = flips(own, opp, move);
+		if ( flips == 0 )
+			return 0;
+
+		if ( currentPlayer == 1 ){
+			black ^= flips | move;
+			white ^= flips;
+		}
+		else {
+			white ^= flips | move;
+			black ^= flips;
+		}
+		hash ^= flipHash(flips) ^ zobrist.key(currentPlayer, Long.numberOfTrailingZeros(move));
+		if ( listener != null )
+			notifyListener(flips, move, 3-currentPlayer, currentPlayer, 0, currentPlayer);
+		changePlayer();
+		return flips;
+	}
+
+	/**
+	 * Takes back the move at the given place. For this implementation the undo record is the bitboard
+	 * of the turned tokens.
+	 */
+	@Override
+	public void unmakeMove(Position place, long undo){
+		long move = bit(place.col, place.row);
+		changePlayer();
+		if ( currentPlayer == 1 ){
+			black ^= undo | move;
+			white ^= undo;
+		}
+		else {
+			white ^= undo | move;
+			black ^= undo;
+		}
+		hash ^= flipHash(undo) ^ zobrist.key(currentPlayer, Long.numberOfTrailingZeros(move));
+		if ( listener != null )
+			notifyListener(undo, move, currentPlayer, 3-currentPlayer, currentPlayer, 0);
+	}
+
+	/**
+	 * Tells the listener that the turned tokens changed from flippedFrom to flippedTo and the place of
+	 * the move from movedFrom to movedTo.
+	 */
+	private void notifyListener(long flips, long move, int flippedFrom, int flippedTo, int movedFrom, int movedTo){
+		for (; flips != 0; flips &= flips - 1)
+			listener.placeChanged(Long.numberOfTrailingZeros(flips), flippedFrom, flippedTo);
+		listener.placeChanged(Long.numberOfTrailingZeros(move), movedFrom, movedTo);
+	}
+
+	/**
+	 * Returns the change of the hash when the given tokens are turned.
+	 */
+	private long flipHash(long flips){
+		long h = 0;
+		for (; flips != 0; flips &= flips - 1)
+			h ^= zobrist.flip[Long.numberOfTrailingZeros(flips)];
+		return h;
+	}
+
+	@Override
+	public boolean hasLegalMove(){
+		return (currentPlayer == 1 ? moves(black, white) : moves(white, black)) != 0;
+	}
+
+	/**
+	 * Generates the legal moves in the same order as the array based implementation. The frontier is not
+	 * needed here, as all moves are found at once with a few shifts of the bitboards.
+	 */
+	@Override
+	protected ArrayList<Position> generateMoves(){
+		long moves = currentPlayer == 1 ? moves(black, white) : moves(white, black);
+		ArrayList<Position> legalPlaces = new ArrayList<Position>(Long.bitCount(moves));
+		while ( moves != 0 ){
+			int sq = Long.numberOfTrailingZeros(moves);
+			legalPlaces.add(Position.at(sq >>> 3, sq & 7));
+			moves &= moves - 1;
+		}
+		return legalPlaces;
+	}
+
+	@Override
+	public void legalMoves(MoveList moves){
+		moves.clear();
+		for (long m = currentPlayer == 1 ? moves(black, white) : moves(white, black); m != 0; m &= m - 1)
+			moves.add(Long.numberOfTrailingZeros(m));
+	}
+
+	//************* Bit operations ****************//
+	/**
+	 * Returns the bit of the place (col, row).
+	 */
+	static long bit(int col, int row){
+		return 1L << (col * SIZE + row);
+	}
+
+	/**
+	 * Shifts all bits one step in the direction given by the shift: +-1 moves along a column (row +-1),
+	 * +-8 along a row (col +-1) and +-7, +-9 along the diagonals. Bits wrapping around a board edge are
+	 * not removed; callers mask the result.
+	 */
+	static long shift(long b, int shift){
+		return shift > 0 ? b << shift : b >>> -shift;
+	}
+
+	/**
+	 * Kogge-Stone occluded fill: returns gen together with all places reachable from it by stepping
+	 * in the given direction over the places in pro.
+	 */
+	static long fill(long gen, long pro, int shift){
+		gen |= pro & shift(gen, shift);
+		pro &= shift(pro, shift);
+		gen |= pro & shift(gen, 2 * shift);
+		pro &= shift(pro, 2 * shift);
+		gen |= pro & shift(gen, 4 * shift);
+		return gen;
+	}
+
+	/**
+	 * Returns the empty places where the player owning the tokens in own may move in the given direction,
+	 * i.e. where a line of opponent tokens ends in a token of own. The mask holds the places a single
+	 * step in the direction can land on without wrapping around the board.
+	 */
+	static long movesInDirection(long own, long opp, long empty, int shift, long mask){
+		long line = fill(own, opp & mask, shift) & opp;
+		return shift(line, shift) & mask & empty;
+	}
+
+	/**
+	 * Returns the bitboard of all legal moves for the player owning the tokens in own.
+	 */
+	static long moves(long own, long opp){
+		long empty = ~(own | opp);
+		return movesInDirection(own, opp, empty, 1, NOT_ROW_0)
+			| movesInDirection(own, opp, empty, -1, NOT_ROW_7)
+			| movesInDirection(own, opp, empty, 8, ALL)
+			| movesInDirection(own, opp, empty, -8, ALL)
+			| movesInDirection(own, opp, empty, 9, NOT_ROW_0)
+			| movesInDirection(own, opp, empty, -7, NOT_ROW_0)
+			| movesInDirection(own, opp, empty, 7, NOT_ROW_7)
+			| movesInDirection(own, opp, empty, -9, NOT_ROW_7);
+	}
+
+	/**
+	 * Returns the opponent tokens turned in the given direction when the player owning own puts a token
+	 * on the (empty) place move.
+	 */
+	static long flipsInDirection(long own, long opp, long move, int shift, long mask){
+		long line = fill(move, opp & mask, shift);
+		if ( (shift(line, shift) & mask & own) == 0 )
+			return 0;
+		return line & opp;
+	}
+
+	/**
+	 * Returns all the opponent tokens turned when the player owning own puts a token on the (empty)
+	 * place move, or 0 if the move is not legal.
+	 */
+	static long flips(long own, long opp, long move){
+		return flipsInDirection(own, opp, move, 1, NOT_ROW_0)
+			| flipsInDirection(own, opp, move, -1, NOT_ROW_7)
+			| flipsInDirection(own, opp, move, 8, ALL)
+			| flipsInDirection(own, opp, move, -8, ALL)
+			| flipsInDirection(own, opp, move, 9, NOT_ROW_0)
+			| flipsInDirection(own, opp, move, -7, NOT_ROW_0)
+			| flipsInDirection(own, opp, move, 7, NOT_ROW_7)
+			| flipsInDirection(own, opp, move, -9, NOT_ROW_7);
+	}
+}
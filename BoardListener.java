@@ -0,0 +1,16 @@
+/**
+ * Listener that is told about every change of a place on the board of a {@link GameState}, by makeMove
+ * and unmakeMove alike, so it can keep its own view of the board up to date without scanning it.
+ * Copies of a state do not have the listener of the original.
+ */
+public interface BoardListener {
+
+	/**
+	 * Called when the place with index col*size+row changes.
+	 * @param place The index of the place, col*size+row
+	 * @param oldValue The previous value of the place: 0 (empty), 1 (black) or 2 (white)
+	 * @param newValue The new value of the place: 0 (empty), 1 (black) or 2 (white)
+	 */
+	public void placeChanged(int place, int oldValue, int newValue);
+
+}
@@ -0,0 +1,315 @@
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Exact solver for 8x8 positions with few empty places. It searches to the end of the game with negamax
+ * alpha-beta on the two bitboards of {@link BitBoardState} and returns the exact difference between the
+ * tokens of the player in turn and those of the opponent at the end of the game (with perfect play), not
+ * only win, loss or draw.
+ *
+ * The empty places are kept in a linked list in order of a static place value, so the search never scans
+ * the full board for empties. With many empties moves are ordered fastest-first, i.e. the move that leaves
+ * the opponent the fewest replies goes first; near the end, moves in quadrants with an odd number of
+ * empties go first (parity). The last three empties are solved by dedicated routines that try the empty
+ * places directly instead of generating moves.
+ */
+public class EndgameSolver {
+
+    public static final int NO_MOVE = -1;
+
+    // Empties above which moves are ordered fastest-first rather than by parity
+    private static final int FASTEST_FIRST_EMPTIES = 7;
+    private static final int INFINITY = 65;
+    private static final int LIST_HEAD = 64;
+
+    private static final int[] PLACE_ORDER = new int[64];    // All places, highest static value first
+    private static final int[] QUADRANT = new int[64];       // Bit of the quadrant of every place
+
+    static {
+        int[][] quadrantValues = {
+            {100, -20, 10, 5},
+            {-20, -50, -2, -2},
+            {10, -2, 1, 1},
+            {5, -2, 1, 0}
+        };
+        Integer[] places = new Integer[64];
+        final int[] value = new int[64];
+        for (int sq = 0; sq < 64; sq++) {
+            int col = sq >>> 3, row = sq & 7;
+            value[sq] = quadrantValues[Math.min(col, 7 - col)][Math.min(row, 7 - row)];
+            QUADRANT[sq] = 1 << ((col >= 4 ? 2 : 0) + (row >= 4 ? 1 : 0));
+            places[sq] = sq;
+        }
+        java.util.Arrays.sort(places, (a, b) -> value[b] != value[a] ? value[b] - value[a] : a - b);
+        for (int i = 0; i < 64; i++) PLACE_ORDER[i] = places[i];
+    }
+
+    /** Thrown out of the search when the deadline has passed */
+    public static class Timeout extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Timeout() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Timeout TIMEOUT = new Timeout();
+
+    /** The best move and its exact score */
+    public static class Result {
+        public final int move;      // Index col*8+row of the best move, or NO_MOVE
+        public final int score;     // Tokens of the player in turn minus tokens of the opponent at the end
+
+        public Result(int move, int score) {
+            this.move = move;
+            this.score = score;
+        }
+    }
+
+    // Doubly linked list of the empty places; LIST_HEAD is both head and tail
+    private final int[] next = new int[65];
+    private final int[] prev = new int[65];
+    private int parity;                                 // Bit of every quadrant with an odd number of empties
+    private final int[][] moveBuffer = new int[65][64]; // Ordered moves for every number of empties
+    private final int[][] keyBuffer = new int[65][64];
+    private long nodes;
+    private long deadline;
+    private AtomicBoolean stop = new AtomicBoolean();  // Stops the solve in progress like the deadline when set
+
+    /**
+     * Solves the position where the player owning own is in turn. Throws {@link Timeout} if the deadline (in
+     * System.nanoTime()) passes first.
+     */
+    public Result solve(long own, long opp, long deadline) {
+        this.deadline = deadline;
+        nodes = 0;
+        int empties = setUpEmpties(own, opp);
+
+        long moves = BitBoardState.moves(own, opp);
+        if (moves == 0) {
+            if (BitBoardState.moves(opp, own) == 0) return new Result(NO_MOVE, finalScore(own, opp));
+            return new Result(NO_MOVE, -solve(opp, own, -INFINITY, INFINITY, empties, true));
+        }
+        int count = orderMoves(own, opp, moves, empties);
+        int alpha = -INFINITY;
+        int best = NO_MOVE;
+        for (int i = 0; i < count; i++) {
+            int x = moveBuffer[empties][i];
+            long b = 1L << x;
+            long f = BitBoardState.flips(own, opp, b);
+            remove(x);
+            int value = -solve(opp ^ f, own | f | b, -INFINITY, -alpha, empties - 1, false);
+            restore(x);
+            if (value > alpha) {
+                alpha = value;
+                best = x;
+            }
+        }
+        return new Result(best, alpha);
+    }
+
+    /**
+     * Solves the given 8x8 state for the player in turn.
+     */
+    public Result solve(BitBoardState s, long deadline) {
+        if (s.getPlayerInTurn() == 1) return solve(s.getBlack(), s.getWhite(), deadline);
+        return solve(s.getWhite(), s.getBlack(), deadline);
+    }
+
+    /**
+     * Sets the flag that stops the solver, as if the deadline had passed, when another thread sets it.
+     */
+    public void setStopFlag(AtomicBoolean stop) {
+        this.stop = stop;
+    }
+
+    /**
+     * Returns the number of nodes searched by the last call to solve.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    private int setUpEmpties(long own, long opp) {
+        long empty = ~(own | opp);
+        int last = LIST_HEAD;
+        int empties = 0;
+        parity = 0;
+        for (int sq : PLACE_ORDER) {
+            if ((empty & (1L << sq)) == 0) continue;
+            next[last] = sq;
+            prev[sq] = last;
+            last = sq;
+            parity ^= QUADRANT[sq];
+            empties++;
+        }
+        next[last] = LIST_HEAD;
+        prev[LIST_HEAD] = last;
+        return empties;
+    }
+
+    private void remove(int x) {
+        next[prev[x]] = next[x];
+        prev[next[x]] = prev[x];
+        parity ^= QUADRANT[x];
+    }
+
+    private void restore(int x) {
+        next[prev[x]] = x;
+        prev[next[x]] = x;
+        parity ^= QUADRANT[x];
+    }
+
+    private static int finalScore(long own, long opp) {
+        return Long.bitCount(own) - Long.bitCount(opp);
+    }
+
+    // Puts the moves in moveBuffer[empties], the move leaving the opponent the fewest replies first, and
+    // among equals the ones in odd quadrants first. Returns the number of moves.
+    private int orderMoves(long own, long opp, long moves, int empties) {
+        int[] buffer = moveBuffer[empties];
+        int[] keys = keyBuffer[empties];
+        int count = 0;
+        for (int x = next[LIST_HEAD]; x != LIST_HEAD; x = next[x]) {
+            long b = 1L << x;
+            if ((moves & b) == 0) continue;
+            long f = BitBoardState.flips(own, opp, b);
+            int key = 2 * Long.bitCount(BitBoardState.moves(opp ^ f, own | f | b)) + ((parity & QUADRANT[x]) != 0 ? 0 : 1);
+            int j = count++;
+            while (j > 0 && keys[j - 1] > key) {
+                keys[j] = keys[j - 1];
+                buffer[j] = buffer[j - 1];
+                j--;
+            }
+            keys[j] = key;
+            buffer[j] = x;
+        }
+        return count;
+    }
+
+    private int solve(long own, long opp, int alpha, int beta, int empties, boolean passed) {
+        if ((++nodes & 4095) == 0 && (System.nanoTime() > deadline || stop.get())) throw TIMEOUT;
+        if (empties <= 3) {
+            int x1 = next[LIST_HEAD];
+            if (empties == 3) {
+                int x2 = next[x1];
+                int x3 = next[x2];
+                // The place alone in its quadrant first
+                if (QUADRANT[x1] == QUADRANT[x2]) return solve3(own, opp, alpha, beta, x3, x1, x2, passed);
+                if (QUADRANT[x1] == QUADRANT[x3]) return solve3(own, opp, alpha, beta, x2, x1, x3, passed);
+                return solve3(own, opp, alpha, beta, x1, x2, x3, passed);
+            }
+            if (empties == 2) return solve2(own, opp, alpha, beta, x1, next[x1], passed);
+            if (empties == 1) return solve1(own, opp, x1);
+            return finalScore(own, opp);
+        }
+
+        long moves = BitBoardState.moves(own, opp);
+        if (moves == 0) {
+            if (passed) return finalScore(own, opp);
+            return -solve(opp, own, -beta, -alpha, empties, true);
+        }
+
+        int best = -INFINITY;
+        if (empties > FASTEST_FIRST_EMPTIES) {
+            int count = orderMoves(own, opp, moves, empties);
+            for (int i = 0; i < count; i++) {
+                int x = moveBuffer[empties][i];
+                long b = 1L << x;
+                long f = BitBoardState.flips(own, opp, b);
+                remove(x);
+                int value = -solve(opp ^ f, own | f | b, -beta, -alpha, empties - 1, false);
+                restore(x);
+                if (value > best) {
+                    best = value;
+                    if (value > alpha) alpha = value;
+                    if (alpha >= beta) return best;
+                }
+            }
+            return best;
+        }
+
+        // First the moves in quadrants with an odd number of empties, then the others
+        for (int odd = 1; odd >= 0; odd--) {
+            for (int x = next[LIST_HEAD]; x != LIST_HEAD; x = next[x]) {
+                long b = 1L << x;
+                if ((moves & b) == 0 || ((parity & QUADRANT[x]) != 0) != (odd == 1)) continue;
+                long f = BitBoardState.flips(own, opp, b);
+                remove(x);
+                int value = -solve(opp ^ f, own | f | b, -beta, -alpha, empties - 1, false);
+                restore(x);
+                if (value > best) {
+                    best = value;
+                    if (value > alpha) alpha = value;
+                    if (alpha >= beta) return best;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int solve3(long own, long opp, int alpha, int beta, int x1, int x2, int x3, boolean passed) {
+        nodes++;
+        int best = -INFINITY;
+        long b = 1L << x1;
+        long f = BitBoardState.flips(own, opp, b);
+        if (f != 0) {
+            best = -solve2(opp ^ f, own | f | b, -beta, -alpha, x2, x3, false);
+            if (best >= beta) return best;
+            if (best > alpha) alpha = best;
+        }
+        b = 1L << x2;
+        f = BitBoardState.flips(own, opp, b);
+        if (f != 0) {
+            int value = -solve2(opp ^ f, own | f | b, -beta, -alpha, x1, x3, false);
+            if (value >= beta) return value;
+            if (value > best) {
+                best = value;
+                if (value > alpha) alpha = value;
+            }
+        }
+        b = 1L << x3;
+        f = BitBoardState.flips(own, opp, b);
+        if (f != 0) {
+            int value = -solve2(opp ^ f, own | f | b, -beta, -alpha, x1, x2, false);
+            if (value > best) best = value;
+        }
+        if (best == -INFINITY) { // No legal move
+            if (passed) return finalScore(own, opp);
+            return -solve3(opp, own, -beta, -alpha, x1, x2, x3, true);
+        }
+        return best;
+    }
+
+    private int solve2(long own, long opp, int alpha, int beta, int x1, int x2, boolean passed) {
+        nodes++;
+        int best = -INFINITY;
+        long b = 1L << x1;
+        long f = BitBoardState.flips(own, opp, b);
+        if (f != 0) {
+            best = -solve1(opp ^ f, own | f | b, x2);
+            if (best >= beta) return best;
+        }
+        b = 1L << x2;
+        f = BitBoardState.flips(own, opp, b);
+        if (f != 0) {
+            int value = -solve1(opp ^ f, own | f | b, x1);
+            if (value > best) best = value;
+        }
+        if (best == -INFINITY) { // No legal move
+            if (passed) return finalScore(own, opp);
+            return -solve2(opp, own, -beta, -alpha, x1, x2, true);
+        }
+        return best;
+    }
+
+    // The last empty place: own moves there if it can, otherwise the opponent does if it can
+    private int solve1(long own, long opp, int x) {
+        nodes++;
+        long b = 1L << x;
+        long f = BitBoardState.flips(own, opp, b);
+        if (f != 0) return finalScore(own | f | b, opp ^ f);
+        f = BitBoardState.flips(opp, own, b);
+        if (f != 0) return finalScore(own ^ f, opp | f | b);
+        return finalScore(own, opp);
+    }
+}
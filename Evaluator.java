@@ -0,0 +1,19 @@
+/**
+ * Evaluation function used by {@link BetterAI} at the horizon of the search.
+ */
+public interface Evaluator {
+
+    /**
+     * Returns the estimated utility of the state seen from player 2 (white), like BetterAI.utility: positive
+     * if white is ahead. It should be well inside (-1, 1), the utilities of a lost and a won game.
+     */
+    public double evaluate(GameState s);
+
+    /**
+     * Prepares the given state for being evaluated many times while moves are made and taken back in it,
+     * e.g. by attaching a {@link BoardListener}. Evaluating a state that was not prepared must still work.
+     */
+    public default void attach(GameState s) {
+    }
+
+}
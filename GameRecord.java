@@ -0,0 +1,175 @@
+import java.util.Arrays;
+
+/**
+ * The record of one game: the board size, the player who started, the names of the black and the white
+ * player, the moves in the order they were played (passes included) and the final number of tokens of
+ * each player. Records are stored in bulk by {@link GameRecordWriter} and read by {@link GameRecordReader}.
+ *
+ * The text transcript of a record is one line of tab separated fields: size, first player, black name,
+ * white name, result as black tokens-white tokens, and the moves in the usual notation, a letter for the
+ * column and a number for the row (f5d6c3...), with "--" for a pass.
+ *
+ * A game lost by an illegal move is recorded up to the last legal move, with a forfeit result that gives
+ * every place on the board to the winner (see {@link #setForfeit}).
+ */
+public class GameRecord {
+    public static final int PASS = -1;
+
+    private final int size;
+    private final int firstPlayer;
+    private final String black;
+    private final String white;
+    private int[] moves = new int[64];      // Index col*size+row of every move, or PASS
+    private int moveCount;
+    private int blackTokens;
+    private int whiteTokens;
+
+    public GameRecord(int size, int firstPlayer, String black, String white) {
+        this.size = size;
+        this.firstPlayer = firstPlayer;
+        this.black = black;
+        this.white = white;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public int getFirstPlayer() {
+        return firstPlayer;
+    }
+
+    public String getBlack() {
+        return black;
+    }
+
+    public String getWhite() {
+        return white;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * Returns the index col*size+row of the i'th move, or PASS.
+     */
+    public int getMove(int i) {
+        return moves[i];
+    }
+
+    public int getBlackTokens() {
+        return blackTokens;
+    }
+
+    public int getWhiteTokens() {
+        return whiteTokens;
+    }
+
+    public void addMove(Position place) {
+        add(place.col * size + place.row);
+    }
+
+    public void addPass() {
+        add(PASS);
+    }
+
+    private void add(int move) {
+        if (moveCount == moves.length) moves = Arrays.copyOf(moves, 2 * moves.length);
+        moves[moveCount++] = move;
+    }
+
+    /**
+     * Sets the result from the tokens on the board of the given final state.
+     */
+    public void setResult(GameState s) {
+        int[] tokens = s.countTokens();
+        setResult(tokens[0], tokens[1]);
+    }
+
+    /**
+     * Sets the result of a game forfeited by the given player (1 for black, 2 for white): all places
+     * on the board go to the other player.
+     */
+    public void setForfeit(int loser) {
+        if (loser == 1) setResult(0, size * size);
+        else setResult(size * size, 0);
+    }
+
+    public void setResult(int blackTokens, int whiteTokens) {
+        this.blackTokens = blackTokens;
+        this.whiteTokens = whiteTokens;
+    }
+
+    /**
+     * Plays the first plies moves of the game from the start position and returns the state reached.
+     * Throws IllegalArgumentException if a move is not legal.
+     */
+    public GameState replay(int plies) {
+        GameState s = GameState.newGame(size, firstPlayer);
+        for (int i = 0; i < plies; i++) {
+            if (moves[i] == PASS) {
+                s.changePlayer();
+            } else if (!s.insertToken(new Position(moves[i] / size, moves[i] % size))) {
+                throw new IllegalArgumentException("Illegal move " + toText(moves[i]) + " at ply " + (i + 1));
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Returns the text transcript of the game.
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        text.append(size).append('\t').append(firstPlayer).append('\t').append(black).append('\t').append(white)
+            .append('\t').append(blackTokens).append('-').append(whiteTokens).append('\t');
+        for (int i = 0; i < moveCount; i++) text.append(toText(moves[i]));
+        return text.toString();
+    }
+
+    private String toText(int move) {
+        if (move == PASS) return "--";
+        return (char) ('a' + move / size) + Integer.toString(move % size + 1);
+    }
+
+    /**
+     * Parses a text transcript made by toText. Throws IllegalArgumentException if it is not one.
+     */
+    public static GameRecord fromText(String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 6) throw new IllegalArgumentException("Not a game transcript: " + line);
+        try {
+            int size = Integer.parseInt(fields[0]);
+            GameRecord record = new GameRecord(size, Integer.parseInt(fields[1]), fields[2], fields[3]);
+            String[] result = fields[4].split("-");
+            record.setResult(Integer.parseInt(result[0]), Integer.parseInt(result[1]));
+            record.addMoves(fields[5]);
+            return record;
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Not a game transcript: " + line);
+        }
+    }
+
+    /**
+     * Adds the moves of the given text in the notation of the transcript (f5d6c3..., "--" for a pass). The
+     * moves are not checked to be legal; see {@link #replay}.
+     */
+    public void addMoves(String moves) {
+        int i = 0;
+        while (i < moves.length()) {
+            if (moves.startsWith("--", i)) {
+                addPass();
+                i += 2;
+                continue;
+            }
+            int col = moves.charAt(i++) - 'a';
+            int start = i;
+            while (i < moves.length() && Character.isDigit(moves.charAt(i))) i++;
+            int row = Integer.parseInt(moves.substring(start, i)) - 1;
+            if (col < 0 || col >= size || row < 0 || row >= size)
+                throw new IllegalArgumentException("Not a place on the board: " + moves.substring(start - 1, i));
+            add(col * size + row);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+/**
+ * Reads a file of game records written by {@link GameRecordWriter}. The file is memory-mapped and the
+ * reader is a cursor over it: next() moves to the next game, whose fields are then read directly from
+ * the mapped file without copying or creating objects, so iterating over millions of games is cheap.
+ * toRecord() makes a {@link GameRecord} of the current game when one is needed.
+ *
+ * The whole file is mapped as a single buffer, whose offsets are ints, so files must be smaller than 2 GB;
+ * larger collections of games must be written to several files.
+ *
+ * The main method converts between binary files and text transcripts and prints statistics of a file.
+ */
+public class GameRecordReader {
+
+    /**
+     * Valid arguments: totext records transcript
+     *              or: fromtext transcript records
+     *              or: stats records
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 3 && args[0].equals("totext")) {
+            GameRecordReader reader = new GameRecordReader(new File(args[1]));
+            try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(args[2])))) {
+                while (reader.next()) out.println(reader.toRecord().toText());
+            }
+        } else if (args.length == 3 && args[0].equals("fromtext")) {
+            // The names go first in the file, so the transcript is read twice
+            LinkedHashSet<String> names = new LinkedHashSet<String>();
+            try (BufferedReader in = new BufferedReader(new FileReader(args[1]))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    if (line.isEmpty()) continue;
+                    GameRecord record = GameRecord.fromText(line);
+                    names.add(record.getBlack());
+                    names.add(record.getWhite());
+                }
+            }
+            try (BufferedReader in = new BufferedReader(new FileReader(args[1]));
+                 GameRecordWriter out = new GameRecordWriter(new File(args[2]), names.toArray(new String[0]))) {
+                for (String line; (line = in.readLine()) != null; ) {
+                    if (line.isEmpty()) continue;
+                    GameRecord record = GameRecord.fromText(line);
+                    record.replay(record.getMoveCount()); // Only legal games are converted
+                    out.write(record);
+                }
+            }
+        } else if (args.length == 2 && args[0].equals("stats")) {
+            printStats(new GameRecordReader(new File(args[1])));
+        } else {
+            System.err.println("Usage: java GameRecordReader totext records transcript");
+            System.err.println("       java GameRecordReader fromtext transcript records");
+            System.err.println("       java GameRecordReader stats records");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints the number of games and moves and the wins, draws and losses of every player.
+     */
+    static void printStats(GameRecordReader reader) throws IOException {
+        int players = reader.getNames().size();
+        long[][] results = new long[players][3];    // Wins, draws, losses
+        long games = 0;
+        long moves = 0;
+        while (reader.next()) {
+            games++;
+            moves += reader.getMoveCount();
+            int difference = reader.getBlackTokens() - reader.getWhiteTokens();
+            results[reader.getBlackIndex()][difference > 0 ? 0 : difference == 0 ? 1 : 2]++;
+            results[reader.getWhiteIndex()][difference < 0 ? 0 : difference == 0 ? 1 : 2]++;
+        }
+        System.out.println(games + " games, " + moves + " moves");
+        for (int i = 0; i < players; i++)
+            System.out.println(reader.getNames().get(i) + ": wins/draws/losses " + results[i][0] + "/"
+                    + results[i][1] + "/" + results[i][2]);
+    }
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+    private final ArrayList<String> names = new ArrayList<String>();
+    private final int firstGame;    // Offset of the first game
+    private int game = -1;          // Offset of the current game, or -1 before the first
+    private int next;               // Offset of the game after the current one
+    private int index = -1;         // Number of the current game from 0, for error messages
+
+    /**
+     * Maps the given file, which must be smaller than 2 GB.
+     */
+    public GameRecordReader(File file) throws IOException {
+        this.file = file;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is too large to map");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < 6 || buffer.getInt(0) != GameRecordWriter.MAGIC)
+            throw new IOException(file + " is not a game record file");
+        int count = buffer.getShort(4);
+        int offset = 6;
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getShort(offset);
+            byte[] bytes = new byte[length];
+            for (int j = 0; j < length; j++) bytes[j] = buffer.get(offset + 2 + j);
+            names.add(new String(bytes, StandardCharsets.UTF_8));
+            offset += 2 + length;
+        }
+        firstGame = offset;
+        next = offset;
+    }
+
+    /**
+     * Returns the player names of the file.
+     */
+    public ArrayList<String> getNames() {
+        return names;
+    }
+
+    /**
+     * Moves to the next game. Returns false, and stays past the last game, when there are no more. Throws an
+     * EOFException if the file ends inside the next game, e.g. when its writer was not closed.
+     */
+    public boolean next() throws IOException {
+        if (next == buffer.limit()) return false;
+        long end = (long) next + GameRecordWriter.GAME_HEADER_SIZE;
+        if (end <= buffer.limit()) {
+            int size = buffer.get(next) & 0xFF;
+            end += (buffer.getShort(next + 8) & 0xFFFF) * (GameRecordWriter.wideMoves(size) ? 2 : 1);
+        }
+        if (end > buffer.limit())
+            throw new EOFException(file + ": game " + (index + 1) + " at offset " + next + " is truncated");
+        game = next;
+        next = (int) end;
+        index++;
+        return true;
+    }
+
+    /**
+     * Moves back to before the first game.
+     */
+    public void rewind() {
+        game = -1;
+        next = firstGame;
+        index = -1;
+    }
+
+    public int getSize() {
+        return buffer.get(game) & 0xFF;
+    }
+
+    public int getFirstPlayer() {
+        return buffer.get(game + 1);
+    }
+
+    public int getBlackIndex() {
+        return buffer.get(game + 2) & 0xFF;
+    }
+
+    public int getWhiteIndex() {
+        return buffer.get(game + 3) & 0xFF;
+    }
+
+    public int getBlackTokens() {
+        return buffer.getShort(game + 4) & 0xFFFF;
+    }
+
+    public int getWhiteTokens() {
+        return buffer.getShort(game + 6) & 0xFFFF;
+    }
+
+    public int getMoveCount() {
+        return buffer.getShort(game + 8) & 0xFFFF;
+    }
+
+    /**
+     * Returns the index col*size+row of the i'th move of the current game, or GameRecord.PASS.
+     */
+    public int getMove(int i) {
+        int offset = game + GameRecordWriter.GAME_HEADER_SIZE;
+        if (GameRecordWriter.wideMoves(getSize())) {
+            int move = buffer.getShort(offset + 2 * i) & 0xFFFF;
+            return move == 0xFFFF ? GameRecord.PASS : move;
+        }
+        int move = buffer.get(offset + i) & 0xFF;
+        return move == 0xFF ? GameRecord.PASS : move;
+    }
+
+    /**
+     * Returns a copy of the current game.
+     */
+    public GameRecord toRecord() {
+        int size = getSize();
+        GameRecord record = new GameRecord(size, getFirstPlayer(), names.get(getBlackIndex()), names.get(getWhiteIndex()));
+        for (int i = 0; i < getMoveCount(); i++) {
+            int move = getMove(i);
+            if (move == GameRecord.PASS) record.addPass();
+            else record.addMove(new Position(move / size, move % size));
+        }
+        record.setResult(getBlackTokens(), getWhiteTokens());
+        return record;
+    }
+}
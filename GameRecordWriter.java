@@ -0,0 +1,121 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+/**
+ * Writes {@link GameRecord}s to a file in a compact binary format, through a buffer that is written to
+ * the file channel when it is full, on flush and on close. Writing is thread safe, so the games of
+ * parallel workers can go to the same file.
+ *
+ * File layout (big-endian): the int MAGIC, the short number of player names and every name as a short
+ * length and UTF-8 bytes; then the games, each with a 10 byte header: the byte size, the byte first
+ * player, the byte indices of the black and the white player in the names, the short black tokens, the
+ * short white tokens and the short number of moves; and then the moves, one byte each (index col*size+row,
+ * 255 for a pass), or two bytes each (65535 for a pass) on boards with 255 or more places. A game of 60
+ * moves on the 8x8 board takes 70 bytes.
+ */
+public class GameRecordWriter implements Closeable {
+    public static final int MAGIC = 0x4F475231;     // "OGR1"
+    static final int GAME_HEADER_SIZE = 10;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final ArrayList<String> names;
+    private long games;
+
+    /**
+     * Creates the file, replacing any existing file, for games between the given players. A name given
+     * twice is stored once.
+     */
+    public GameRecordWriter(File file, String... names) throws IOException {
+        this.names = new ArrayList<String>(new LinkedHashSet<String>(Arrays.asList(names)));
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) this.names.size());
+        for (String name : this.names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (buffer.remaining() < 2 + bytes.length) drain();
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Returns true if moves on a board of the given size take two bytes.
+     */
+    static boolean wideMoves(int size) {
+        return size * size >= 255;
+    }
+
+    /**
+     * Appends the game. Its players must be among the names the file was created with.
+     */
+    public synchronized void write(GameRecord game) throws IOException {
+        int black = names.indexOf(game.getBlack());
+        int white = names.indexOf(game.getWhite());
+        if (black < 0 || white < 0)
+            throw new IllegalArgumentException("Unknown player " + (black < 0 ? game.getBlack() : game.getWhite()));
+        boolean wide = wideMoves(game.getSize());
+        int length = GAME_HEADER_SIZE + game.getMoveCount() * (wide ? 2 : 1);
+        if (buffer.remaining() < length) drain();
+        if (buffer.remaining() < length) { // Longer than the buffer: write it on its own
+            ByteBuffer large = ByteBuffer.allocate(length);
+            put(large, game, black, white, wide);
+            large.flip();
+            while (large.hasRemaining()) channel.write(large);
+        } else {
+            put(buffer, game, black, white, wide);
+        }
+        games++;
+    }
+
+    private static void put(ByteBuffer out, GameRecord game, int black, int white, boolean wide) {
+        out.put((byte) game.getSize());
+        out.put((byte) game.getFirstPlayer());
+        out.put((byte) black);
+        out.put((byte) white);
+        out.putShort((short) game.getBlackTokens());
+        out.putShort((short) game.getWhiteTokens());
+        out.putShort((short) game.getMoveCount());
+        for (int i = 0; i < game.getMoveCount(); i++) {
+            int move = game.getMove(i);
+            if (wide) out.putShort((short) (move == GameRecord.PASS ? 0xFFFF : move));
+            else out.put((byte) (move == GameRecord.PASS ? 0xFF : move));
+        }
+    }
+
+    /**
+     * Returns the number of games written.
+     */
+    public synchronized long getGames() {
+        return games;
+    }
+
+    // Writes the buffer to the file
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered games to the file.
+     */
+    public synchronized void flush() throws IOException {
+        drain();
+        channel.force(false);
+    }
+
+    public synchronized void close() throws IOException {
+        drain();
+        channel.close();
+    }
+}
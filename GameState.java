@@ -8,8 +8,14 @@ import java.util.ArrayList;
  */
 public class GameState {
 	private int[][] board; 		// Possible values: 0 (empty), 1 (black), 2 (white)
-	private int currentPlayer; 	// The player who is next to put a token on the board. Value is 1 or 2.
-	private int size;  			// The number of columns = the number of rows on the board
+	protected int currentPlayer; 	// The player who is next to put a token on the board. Value is 1 or 2.
+	protected int size;  			// The number of columns = the number of rows on the board
+	protected Zobrist zobrist;		// The keys for hashing a board of this size
+	protected long hash;			// Zobrist hash of the board and the player in turn, kept up to date by every change
+	private long[] frontier;		// Bit col*size+row is set for the empty places next to a token: the only candidate moves
+	private byte[] neighbours;		// The number of tokens next to every place, index col*size+row
+	private ArrayList<Position> movesCache;	// The legal moves of this state, or null until they are needed again
+	protected BoardListener listener;	// Told about every change of a place, or null
 	
 	//************ Constructors ****************//
 	/**
@@ -29,6 +35,9 @@ public class GameState {
         board[half+1][half+1] = 1;
         board[half][half+1] = 2;
         board[half+1][half] = 2;   
+        zobrist = Zobrist.forSize(size);
+        hash = computeHash();
+        initFrontier();
 	}
 	
 	/**
@@ -47,16 +56,136 @@ public class GameState {
 			}
 		}
 		this.currentPlayer = playerToTakeTurn;
+		zobrist = Zobrist.forSize(size);
+		hash = computeHash();
+		initFrontier();
+	}
+
+	/**
+	 * Constructor for subclasses that keep the board in a representation of their own. The subclass
+	 * is responsible for setting up the board, the player in turn and the hash.
+	 * @param size Number of columns (and number of rows) in the board.
+	 */
+	protected GameState(int size){
+		this.size = size;
+		zobrist = Zobrist.forSize(size);
+	}
+
+	/**
+	 * Returns a game state for a new game, i.e. the same as {@link #GameState(int, int)}, but backed by the
+	 * fastest implementation available for the given size: {@link BitBoardState} for the standard 8x8 board,
+	 * {@link WideBoardState} for the other sizes up to 64x64 and the array based implementation beyond.
+	 */
+	public static GameState newGame(int size, int playerToStart){
+		if ( size == BitBoardState.SIZE )
+			return new BitBoardState(playerToStart);
+		if ( size <= WideBoardState.MAX_SIZE )
+			return new WideBoardState(size, playerToStart);
+		return new GameState(size, playerToStart);
+	}
+
+	/**
+	 * Returns a game state equal to the one represented by the supplied board and player, i.e. the same as
+	 * {@link #GameState(int[][], int)}, but backed by the fastest implementation available for the board size.
+	 */
+	public static GameState fromBoard(int[][] board, int playerToTakeTurn){
+		if ( board.length == BitBoardState.SIZE )
+			return new BitBoardState(board, playerToTakeTurn);
+		if ( board.length <= WideBoardState.MAX_SIZE )
+			return new WideBoardState(board, playerToTakeTurn);
+		return new GameState(board, playerToTakeTurn);
+	}
+
+	/**
+	 * Returns an independent copy of this game state using the same implementation.
+	 */
+	public GameState copy(){
+		return new GameState(board, currentPlayer);
 	}
 	
 	//************ Getter methods *******************//
 	/**
-	 * Returns the array representing the board of this game state
+	 * Returns the array representing the board of this game state. Implementations that are not backed
+	 * by an array return a snapshot, so changes to the returned array do not affect the state.
 	 */
 	public int[][] getBoard(){
 		return board;
 	}
 
+	/**
+	 * Returns the number of columns (= the number of rows) on the board.
+	 */
+	public int getSize(){
+		return size;
+	}
+
+	/**
+	 * Returns the Zobrist hash of this state (see {@link Zobrist}). Equal states have equal hashes, also
+	 * across implementations of GameState.
+	 */
+	public long getHash(){
+		return hash;
+	}
+
+	/**
+	 * Computes the Zobrist hash of this state from scratch.
+	 */
+	protected long computeHash(){
+		long h = currentPlayer == 2 ? Zobrist.SIDE : 0;
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] != 0 )
+					h ^= zobrist.key(board[i][j], i*size+j);
+			}
+		}
+		return h;
+	}
+
+	/**
+	 * Sets up the frontier and the neighbour counts of the board from scratch.
+	 */
+	private void initFrontier(){
+		frontier = new long[(size*size + 63) / 64];
+		neighbours = new byte[size*size];
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] != 0 )
+					addNeighbour(i, j, 1);
+			}
+		}
+	}
+
+	/**
+	 * Adds delta (1 or -1) to the neighbour counts of the places around (col, row) and updates the frontier.
+	 */
+	private void addNeighbour(int col, int row, int delta){
+		for (int c = Math.max(0, col-1); c <= Math.min(size-1, col+1); c++){
+			for (int r = Math.max(0, row-1); r <= Math.min(size-1, row+1); r++){
+				if ( c == col && r == row )
+					continue;
+				int index = c*size + r;
+				neighbours[index] += delta;
+				if ( board[c][r] == 0 && neighbours[index] == (delta > 0 ? 1 : 0) )
+					frontier[index >>> 6] ^= 1L << index;
+			}
+		}
+	}
+
+	/**
+	 * Sets the listener that is told about every change of a place on the board from now on, replacing
+	 * the previous one. null removes the listener.
+	 */
+	public void setBoardListener(BoardListener listener){
+		this.listener = listener;
+	}
+
+	/**
+	 * Returns the listener set with {@link #setBoardListener(BoardListener)}, or null.
+	 */
+	public BoardListener getBoardListener(){
+		return listener;
+	}
+
 	/**
 	 * Returns the player whose turn it is, i.e. 1 (black) or 2 (white).
 	 */
@@ -70,23 +199,22 @@ public class GameState {
 	 */
 	public void changePlayer(){
 		currentPlayer = currentPlayer == 1 ? 2 : 1;
+		hash ^= Zobrist.SIDE;
+		movesCache = null;
 	}
 	
 	/**
 	 * Returns true if the game is finished (i.e. none of the players can make any legal moves)
-	 * and false otherwise.
+	 * and false otherwise. The player in turn is the same afterwards.
 	 */
 	public boolean isFinished(){
-		if ( !legalMoves().isEmpty() )
+		if ( hasLegalMove() )
 			return false;
 		else{ //current player has no legal moves
 			changePlayer();
-			if ( legalMoves().isEmpty() ) //next player also has no legal moves
-				return true;
-			else{
-				changePlayer();
-				return false;
-			}
+			boolean finished = !hasLegalMove(); //next player also has no legal moves
+			changePlayer();
+			return finished;
 		}
 	}
 	
@@ -114,60 +242,182 @@ public class GameState {
 	 * False is also returned if the given place does not represent a place on the board. 
 	 */
     public boolean insertToken(Position place) { 
+    	return makeMove(place) != 0;
+    }
+
+	/**
+	 * Makes the move at the given place in this state, exactly like {@link #insertToken(Position)}, and returns
+	 * a record of the tokens that were turned. Passing the place and the record to {@link #unmakeMove(Position, long)}
+	 * restores the state as it was before the move. Returns 0 and leaves the state unchanged if the move is not legal.
+	 * The record packs the number of tokens captured in each of the 8 directions into one byte each.
+	 */
+    public long makeMove(Position place) {
     	if ( place.col < 0 || place.row < 0 || place.col >= size || place.row >= size ) //not a position on the board
-    		return false;
+    		return 0;
     	if ( board[place.col][place.row] != 0 ) // The position is not empty
-    		return false;
+    		return 0;
 
-    	boolean capturesFound = false;
+    	long undo = 0;
+    	int direction = 0;
     	// Capturing all possible opponents of the current player
     	for (int deltaX = -1; deltaX <= 1; deltaX++){
     		for (int deltaY = -1; deltaY <= 1; deltaY++){
+    			if ( deltaX == 0 && deltaY == 0 )
+    				continue;
         		int captives = captureInDirection(place, deltaX, deltaY); 
-        		if ( captives > 0){
-        			capturesFound = true;
-        			for ( int i = 1; i <= captives; i++)
-        				board[place.col+deltaX*i][place.row+deltaY*i]=currentPlayer;
+        		for ( int i = 1; i <= captives; i++){
+        			board[place.col+deltaX*i][place.row+deltaY*i]=currentPlayer;
+        			hash ^= zobrist.flip[(place.col+deltaX*i)*size + place.row+deltaY*i];
+        			if ( listener != null )
+        				listener.placeChanged((place.col+deltaX*i)*size + place.row+deltaY*i, 3-currentPlayer, currentPlayer);
         		}
+        		undo |= (long) captives << (8*direction);
+        		direction++;
         	}		
     	}
     	
-    	if ( capturesFound ){
+    	if ( undo != 0 ){
     		// Place the token at the given place
     		board[place.col][place.row] = currentPlayer;
+    		hash ^= zobrist.key(currentPlayer, place.col*size + place.row);
+    		int index = place.col*size + place.row;
+    		frontier[index >>> 6] &= ~(1L << index);
+    		addNeighbour(place.col, place.row, 1);
+    		if ( listener != null )
+    			listener.placeChanged(index, 0, currentPlayer);
     		this.changePlayer();
-    		return true;
     	}
-    	else {
-    		return false;
+    	return undo;
+    }
+
+	/**
+	 * Takes back the move at the given place, which must be the last move made in this state.
+	 * @param place The place given to {@link #makeMove(Position)}
+	 * @param undo The record returned by {@link #makeMove(Position)}
+	 */
+    public void unmakeMove(Position place, long undo) {
+    	this.changePlayer();
+    	int opponent = (currentPlayer == 1 ? 2 : 1);
+    	int direction = 0;
+    	for (int deltaX = -1; deltaX <= 1; deltaX++){
+    		for (int deltaY = -1; deltaY <= 1; deltaY++){
+    			if ( deltaX == 0 && deltaY == 0 )
+    				continue;
+    			int captives = (int) (undo >>> (8*direction)) & 0xFF;
+    			for ( int i = 1; i <= captives; i++){
+    				board[place.col+deltaX*i][place.row+deltaY*i]=opponent;
+    				hash ^= zobrist.flip[(place.col+deltaX*i)*size + place.row+deltaY*i];
+    				if ( listener != null )
+    					listener.placeChanged((place.col+deltaX*i)*size + place.row+deltaY*i, currentPlayer, opponent);
+    			}
+    			direction++;
+    		}
     	}
+    	board[place.col][place.row] = 0;
+    	hash ^= zobrist.key(currentPlayer, place.col*size + place.row);
+    	addNeighbour(place.col, place.row, -1);
+    	int index = place.col*size + place.row;
+    	if ( listener != null )
+    		listener.placeChanged(index, currentPlayer, 0);
+    	if ( neighbours[index] > 0 )
+    		frontier[index >>> 6] |= 1L << index;
+    }
+
+	/**
+	 * Skips the turn of the current player in this state, to be taken back with {@link #unpass()}.
+	 */
+    public void pass() {
+    	changePlayer();
+    }
+
+	/**
+	 * Takes back a skipped turn made with {@link #pass()}.
+	 */
+    public void unpass() {
+    	changePlayer();
     }
 
     /**
      * Returns a list of all the positions on the board that constitutes a legal move for the current player.
+     * Every position is in the list exactly once, ordered by column and then row. The moves are cached until
+     * the state changes; the returned list is a fresh copy that the caller may change.
      */
     public ArrayList<Position> legalMoves(){
-    	ArrayList<Position> posPlaces = new ArrayList<Position>();
-    	for (int i = 0; i < this.size; i++){
-    		for (int j = 0; j < this.size; j++){
-    			if ( board[i][j] == 0 ){
-    				posPlaces.add(new Position(i,j));
-    			}
+    	if ( movesCache == null )
+    		movesCache = generateMoves();
+    	return new ArrayList<Position>(movesCache);
+    }
+
+    /**
+     * Puts the legal moves of the current player into the given list as place indices (col*size+row), in the
+     * same order as {@link #legalMoves()}, replacing what it held. Unlike legalMoves() this creates no objects,
+     * so it is the one to use in a search.
+     */
+    public void legalMoves(MoveList moves){
+    	moves.clear();
+    	if ( movesCache != null ){
+    		for (Position p : movesCache)
+    			moves.add(p.col*size + p.row);
+    		return;
+    	}
+    	for (int w = 0; w < frontier.length; w++){
+    		for (long bits = frontier[w]; bits != 0; bits &= bits - 1){
+    			int index = w*64 + Long.numberOfTrailingZeros(bits);
+    			if ( isLegal(index / size, index % size) )
+    				moves.add(index);
     		}
     	}
+    }
+
+    /**
+     * Returns true if the current player has a legal move. This stops at the first legal move found, so it
+     * is cheaper than asking legalMoves() whether it is empty.
+     */
+    public boolean hasLegalMove(){
+    	if ( movesCache != null )
+    		return !movesCache.isEmpty();
+    	for (int w = 0; w < frontier.length; w++){
+    		for (long bits = frontier[w]; bits != 0; bits &= bits - 1){
+    			int index = w*64 + Long.numberOfTrailingZeros(bits);
+    			if ( isLegal(index / size, index % size) )
+    				return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Generates the legal moves for {@link #legalMoves()}. Only the places in the frontier, i.e. the empty
+     * places next to a token, can be legal moves, so only those are tried.
+     */
+    protected ArrayList<Position> generateMoves(){
     	ArrayList<Position> legalPlaces = new ArrayList<Position>();
-    	for (Position p: posPlaces){
-    		for (int deltaX = -1; deltaX <= 1; deltaX++){
-    			for (int deltaY = -1; deltaY <= 1; deltaY++){
-    				if ( captureInDirection(p, deltaX, deltaY) > 0 ){
-    	    			legalPlaces.add(p);
-    				}
-    			}
+    	for (int w = 0; w < frontier.length; w++){
+    		for (long bits = frontier[w]; bits != 0; bits &= bits - 1){
+    			int index = w*64 + Long.numberOfTrailingZeros(bits);
+    			int col = index / size;
+    			int row = index % size;
+    			if ( isLegal(col, row) )
+    				legalPlaces.add(Position.at(col, row));
     		}
     	}
     	return legalPlaces;
-    }	
-    
+    }
+
+    /**
+     * Returns true if the current player can capture in at least one direction from the empty place (col, row).
+     */
+    private boolean isLegal(int col, int row){
+    	Position p = Position.at(col, row);
+    	for (int deltaX = -1; deltaX <= 1; deltaX++){
+    		for (int deltaY = -1; deltaY <= 1; deltaY++){
+    			if ( (deltaX != 0 || deltaY != 0) && captureInDirection(p, deltaX, deltaY) > 0 )
+    				return true;
+    		}
+    	}
+    	return false;
+    }
+
     /**
      * Checks how many tokens of the opponent the player can capture in the direction given by deltaX and deltaY
      * if the player puts a token at the given position.
@@ -0,0 +1,41 @@
+/**
+ * The original evaluation function of BetterAI: a weighted sum of the number of tokens and the number of
+ * available moves of each player. Used for all board sizes when there are no pattern weights.
+ */
+public class HeuristicEvaluator implements Evaluator {
+
+    private static final double TOKENS_PROPORTION = 0.1;
+    private static final double MOVES_PROPORTION = 0.9;
+
+    public double evaluate(GameState s) {
+        // number of tokens for each player
+        int[] tokens = s.countTokens();
+
+        // number of available moves for each player
+        int movesP1;
+        int movesP2;
+        if (s instanceof BitBoardState) {
+            BitBoardState b = (BitBoardState) s;
+            movesP1 = Long.bitCount(BitBoardState.moves(b.getBlack(), b.getWhite()));
+            movesP2 = Long.bitCount(BitBoardState.moves(b.getWhite(), b.getBlack()));
+        } else if (s instanceof WideBoardState) {
+            movesP1 = ((WideBoardState) s).countMoves(1);
+            movesP2 = ((WideBoardState) s).countMoves(2);
+        } else {
+            // counting the opponent's by passing in place
+            int movesInTurn = s.legalMoves().size();
+            s.pass();
+            int movesNotInTurn = s.legalMoves().size();
+            s.unpass();
+            movesP1 = s.getPlayerInTurn() == 1 ? movesInTurn : movesNotInTurn;
+            movesP2 = s.getPlayerInTurn() == 1 ? movesNotInTurn : movesInTurn;
+        }
+
+        // proportions
+        double totalSpace = s.getSize() * s.getSize();
+        double hPlayer1 = tokens[0] * TOKENS_PROPORTION + movesP1 * MOVES_PROPORTION;
+        double hPlayer2 = tokens[1] * TOKENS_PROPORTION + movesP2 * MOVES_PROPORTION;
+
+        return (hPlayer2 - hPlayer1) / totalSpace;
+    }
+}
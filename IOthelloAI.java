@@ -1,3 +1,6 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
  * Interface containing the method that an AI needs to implement to play Othello.
  *  
@@ -14,5 +17,26 @@ public interface IOthelloAI {
 	 * e.g. (-1, -1) if no moves are possible.
 	 */
 	public Position decideMove(GameState s);
-	
+
+	/**
+	 * Calculates the move to make for the given game state on the given executor, without blocking the caller.
+	 * The AI gets a copy of the state, so the caller may change its own state while waiting.
+	 * Cancelling the returned future abandons the move; an AI that overrides this method can also stop
+	 * searching when it is cancelled, which the default implementation cannot.
+	 * @param s The current state of the game in which it should be the AI's turn.
+	 * @param executor Runs the call to decideMove.
+	 * @return a future that completes with the move, or exceptionally if decideMove throws.
+	 */
+	public default CompletableFuture<Position> decideMoveAsync(GameState s, Executor executor) {
+		GameState copy = s.copy();
+		return CompletableFuture.supplyAsync(() -> decideMove(copy), executor);
+	}
+
+	/**
+	 * Releases the threads and the memory the AI holds, when it is not going to be asked for moves again.
+	 * Must not be called while decideMove is running. The default implementation does nothing.
+	 */
+	public default void close() {
+	}
+
 }
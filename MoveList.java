@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+
+/**
+ * A list of moves as place indices (col*size+row), filled by {@link GameState#legalMoves(MoveList)} without
+ * creating any objects. The search takes a list per ply from a {@link Pool} and reuses it at every node of
+ * that ply, so the array only grows while the lists are first filled. {@link #position(int, int)} returns
+ * the shared {@link Position} of a move for the methods that take one.
+ */
+public class MoveList {
+    private int[] squares;
+    private int size;
+
+    public MoveList() {
+        this(32);
+    }
+
+    public MoveList(int capacity) {
+        squares = new int[Math.max(1, capacity)];
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public void add(int square) {
+        if (size == squares.length) squares = java.util.Arrays.copyOf(squares, 2 * size);
+        squares[size++] = square;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // The place index of the i'th move
+    public int get(int i) {
+        return squares[i];
+    }
+
+    public void set(int i, int square) {
+        squares[i] = square;
+    }
+
+    public void swap(int i, int j) {
+        int square = squares[i];
+        squares[i] = squares[j];
+        squares[j] = square;
+    }
+
+    // Keeps only the first size moves
+    public void truncate(int size) {
+        this.size = Math.min(this.size, size);
+    }
+
+    public boolean contains(int square) {
+        for (int i = 0; i < size; i++)
+            if (squares[i] == square) return true;
+        return false;
+    }
+
+    // The i'th move as a Position on a board of the given size
+    public Position position(int i, int boardSize) {
+        int square = squares[i];
+        return Position.at(square / boardSize, square % boardSize);
+    }
+
+    // A new ArrayList of the moves as Positions, for code written against GameState.legalMoves()
+    public ArrayList<Position> toList(int boardSize) {
+        ArrayList<Position> list = new ArrayList<Position>(size);
+        for (int i = 0; i < size; i++) list.add(position(i, boardSize));
+        return list;
+    }
+
+    /**
+     * One move list per ply of a search, created the first time a ply is reached. Not thread safe: every
+     * searching thread has its own pool.
+     */
+    public static class Pool {
+        private MoveList[] lists = new MoveList[0];
+
+        // The empty list for the given ply; the list of a ply is only valid until the ply is reached again
+        public MoveList get(int ply) {
+            if (ply >= lists.length) {
+                int length = Math.max(ply + 1, 2 * lists.length);
+                MoveList[] newLists = java.util.Arrays.copyOf(lists, length);
+                for (int i = lists.length; i < length; i++) newLists[i] = new MoveList();
+                lists = newLists;
+            }
+            MoveList list = lists[ply];
+            list.clear();
+            return list;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Move ordering for the search of {@link BetterAI}, cheap enough to run at every node. The moves of a
+ * node get keys from, in order of precedence:
+ * <ul>
+ * <li>the move from the transposition table or the principal variation,</li>
+ * <li>the two killer moves of the ply: the last two moves that caused a cutoff at the same depth in other
+ * branches,</li>
+ * <li>the history table: for every player and place, the sum of the squared remaining depths of the
+ * cutoffs the move to that place caused anywhere in the search, and</li>
+ * <li>a static table of place values (corners good, the places next to them bad, edges fair).</li>
+ * </ul>
+ * No move is made to compute a key, and the moves are not sorted: pick returns them one at a time, the
+ * best remaining first, so a node that is cut off after the first move never orders the rest.
+ */
+public class MoveOrdering {
+    private static final int TABLE_MOVE_KEY = 1 << 30;
+    private static final int KILLER_KEY = 1 << 29;
+    private static final int SECOND_KILLER_KEY = 1 << 28;
+    private static final int HISTORY_LIMIT = 1 << 26;  // All history is halved when an entry gets above this
+    private static final int SQUARE_WEIGHT = 16;        // Static value multiplier, so it breaks ties in history
+
+    private int size;
+    private int[] squareValues = new int[0];   // Static value of every place, index col*size+row
+    private int[][] history = new int[3][0];    // [player][place]
+    private int[][] killers = new int[0][];     // [ply][slot], index col*size+row or -1
+    private int[][] keys = new int[0][];        // [ply][move], the keys of the moves of the node at that ply
+
+    /**
+     * Prepares for searching positions of the given board size. The history is aged: every entry is
+     * halved, so moves that were good in the previous search still come early but can be overtaken.
+     */
+    public void newSearch(int size) {
+        if (size != this.size) {
+            this.size = size;
+            squareValues = squareValues(size);
+            history = new int[3][size * size];
+        } else {
+            for (int[] h : history)
+                for (int i = 0; i < h.length; i++) h[i] >>= 1;
+        }
+        for (int[] k : killers) k[0] = k[1] = -1;
+    }
+
+    /**
+     * Returns the static values of the places of a board of the given size, from the distance of every
+     * place to the nearest edges.
+     */
+    static int[] squareValues(int size) {
+        int[] values = new int[size * size];
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                int a = Math.min(col, size - 1 - col);
+                int b = Math.min(row, size - 1 - row);
+                int near = Math.min(a, b);
+                int far = Math.max(a, b);
+                int value;
+                if (far == 0) value = 100;                  // Corner
+                else if (near == 0 && far == 1) value = -20; // Next to a corner on the edge
+                else if (near == 1 && far == 1) value = -50; // Diagonally next to a corner
+                else if (near == 0) value = far == 2 ? 10 : 5; // Edge
+                else if (near == 1) value = -2;             // Next to an edge
+                else value = 1;
+                values[col * size + row] = value;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Computes the keys of the moves of the node at the given ply, with tableMove (index col*size+row, or -1)
+     * first. The moves are then taken in order with pick.
+     */
+    public void order(GameState s, MoveList moves, int tableMove, int ply) {
+        if (ply >= keys.length) grow(ply);
+        int n = moves.size();
+        if (keys[ply].length < n) keys[ply] = new int[Math.max(n, 2 * keys[ply].length)];
+        int[] k = keys[ply];
+        int[] h = history[s.getPlayerInTurn()];
+        int killer0 = killers[ply][0];
+        int killer1 = killers[ply][1];
+        for (int i = 0; i < n; i++) {
+            int place = moves.get(i);
+            if (place == tableMove) k[i] = TABLE_MOVE_KEY;
+            else if (place == killer0) k[i] = KILLER_KEY;
+            else if (place == killer1) k[i] = SECOND_KILLER_KEY;
+            else k[i] = h[place] + SQUARE_WEIGHT * squareValues[place];
+        }
+    }
+
+    /**
+     * Returns the move to try as the i'th move of the node at the given ply: the remaining move with the
+     * highest key, which is swapped into place i of moves. order must have been called for the node.
+     */
+    public int pick(MoveList moves, int i, int ply) {
+        int[] k = keys[ply];
+        int best = i;
+        for (int j = i + 1; j < moves.size(); j++)
+            if (k[j] > k[best]) best = j;
+        if (best != i) {
+            moves.swap(best, i);
+            int key = k[best];
+            k[best] = k[i];
+            k[i] = key;
+        }
+        return moves.get(i);
+    }
+
+    /**
+     * Records the result of a node at the given ply with the given remaining depth: place is the place of
+     * the best move, and cutoff tells if the node was cut off by it.
+     */
+    public void update(GameState s, int place, int ply, int draft, boolean cutoff) {
+        if (!cutoff) return;
+
+        int[] k = killers[ply];
+        if (k[0] != place) {
+            k[1] = k[0];
+            k[0] = place;
+        }
+        int[] h = history[s.getPlayerInTurn()];
+        h[place] += draft * draft;
+        if (h[place] > HISTORY_LIMIT) {
+            for (int[] hh : history)
+                for (int i = 0; i < hh.length; i++) hh[i] >>= 1;
+        }
+    }
+
+    private void grow(int ply) {
+        int length = Math.max(ply + 1, 2 * keys.length);
+        int[][] newKeys = new int[length][];
+        int[][] newKillers = new int[length][];
+        for (int i = 0; i < length; i++) {
+            newKeys[i] = i < keys.length ? keys[i] : new int[16];
+            newKillers[i] = i < killers.length ? killers[i] : new int[]{-1, -1};
+        }
+        keys = newKeys;
+        killers = newKillers;
+    }
+}
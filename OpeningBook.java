@@ -0,0 +1,147 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Book of the best moves in 8x8 opening positions, stored in a binary file that is memory-mapped when opened,
+ * so opening a book with millions of entries takes no time and only the pages that are looked at are read.
+ *
+ * Positions are keyed by a hash of their canonical form under the 8 board symmetries (see {@link Symmetry}),
+ * seen from the player in turn (own and opponent tokens), so all equivalent positions share one entry. The
+ * stored move is in the canonical frame and is mapped back to the frame of the position looked up.
+ *
+ * File layout (big-endian): the int MAGIC, the int ENTRY_SIZE, the long number of entries, and then the
+ * entries sorted by key, each a long key, a short move (index col*8+row) and a short score (utility * 10000).
+ */
+public class OpeningBook {
+    public static final int MAGIC = 0x4F424B31;     // "OBK1"
+    public static final int ENTRY_SIZE = 12;
+    private static final int HEADER_SIZE = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int entries;
+
+    private OpeningBook(MappedByteBuffer buffer, int entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Memory-maps the book in the given file.
+     */
+    public static OpeningBook open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != ENTRY_SIZE)
+                throw new IOException(file + " is not an opening book");
+            long entries = buffer.getLong(8);
+            if (HEADER_SIZE + entries * ENTRY_SIZE > channel.size())
+                throw new IOException(file + " is truncated");
+            return new OpeningBook(buffer, (int) entries);
+        }
+    }
+
+    /**
+     * Returns the key of the position with the given tokens of the player in turn and of the opponent.
+     */
+    public static long key(long own, long opp) {
+        int t = Symmetry.canonical(own, opp);
+        return hash(Symmetry.transform(own, t), Symmetry.transform(opp, t));
+    }
+
+    private static long hash(long own, long opp) {
+        long z = own * 0x9E3779B97F4A7C15L ^ Long.rotateLeft(opp * 0xC2B2AE3D27D4EB4FL, 31);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the move in the canonical frame, i.e. the frame the book stores moves in, for a move of the
+     * position with the given tokens.
+     */
+    public static int toCanonical(long own, long opp, int move) {
+        return Symmetry.transformPlace(move, Symmetry.canonical(own, opp));
+    }
+
+    /**
+     * Returns the book move (index col*8+row) for the position with the given tokens of the player in turn
+     * and of the opponent, or -1 if the position is not in the book.
+     */
+    public int lookup(long own, long opp) {
+        int t = Symmetry.canonical(own, opp);
+        int i = find(hash(Symmetry.transform(own, t), Symmetry.transform(opp, t)));
+        if (i < 0) return -1;
+        return Symmetry.inversePlace(getMove(i), t);
+    }
+
+    /**
+     * Returns the index of the entry of the position with the given tokens, or -1 if it is not in the book.
+     */
+    public int indexOf(long own, long opp) {
+        return find(key(own, opp));
+    }
+
+    /**
+     * Returns the index of the entry with the given key, or -1. The entries are sorted, so this is a binary search.
+     */
+    private int find(long key) {
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long k = buffer.getLong(HEADER_SIZE + mid * ENTRY_SIZE);
+            if (k < key) low = mid + 1;
+            else if (k > key) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of positions in the book.
+     */
+    public int size() {
+        return entries;
+    }
+
+    public long getKey(int i) {
+        return buffer.getLong(HEADER_SIZE + i * ENTRY_SIZE);
+    }
+
+    public int getMove(int i) {
+        return buffer.getShort(HEADER_SIZE + i * ENTRY_SIZE + 8);
+    }
+
+    public double getScore(int i) {
+        return buffer.getShort(HEADER_SIZE + i * ENTRY_SIZE + 10) / 10000.0;
+    }
+
+    /**
+     * Writes a book with the given entries, which must have distinct keys but need not be sorted. Moves are in
+     * the canonical frame.
+     */
+    public static void write(File file, long[] keys, int[] moves, double[] scores, int count) throws IOException {
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(ENTRY_SIZE);
+            out.writeLong(count);
+            for (int i : order) {
+                out.writeLong(keys[i]);
+                out.writeShort(moves[i]);
+                out.writeShort((int) Math.round(Math.max(-3.2767, Math.min(3.2767, scores[i])) * 10000));
+            }
+        }
+    }
+}
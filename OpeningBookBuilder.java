@@ -0,0 +1,202 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Builds or grows an {@link OpeningBook}. Entries already in the book are kept; new positions are added from
+ * <ul>
+ * <li>deep searches: every position up to a number of plies from the start is searched by BetterAI to a
+ * fixed depth, or</li>
+ * <li>self-play: BetterAI plays games against itself, each starting with a couple of random moves, and the
+ * positions and moves of the first plies are recorded.</li>
+ * </ul>
+ * Positions are collected by their canonical key, so symmetric positions are searched only once.
+ */
+public class OpeningBookBuilder
+{
+    /**
+     * Valid arguments: book search plies depth [threads]
+     *              or: book selfplay games plies timeMillis [threads]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 5 || !(args[1].equals("search") || args[1].equals("selfplay"))) {
+            System.err.println("Usage: java OpeningBookBuilder book search plies depth [threads]");
+            System.err.println("       java OpeningBookBuilder book selfplay games plies timeMillis [threads]");
+            System.err.println("\tbook\t\t - The book file, which is created or grown.");
+            System.err.println("\tplies\t\t - Positions up to this many plies from the start are added.");
+            System.err.println("\tdepth\t\t - The search depth for every position.");
+            System.err.println("\tgames\t\t - The number of self-play games.");
+            System.err.println("\ttimeMillis\t - The time per move in self-play games.");
+            System.err.println("\tthreads\t\t - Defaults to the number of processors.");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        boolean search = args[1].equals("search");
+        int threadsArg = search ? 4 : 5;
+        int threads = args.length > threadsArg ? Integer.parseInt(args[threadsArg]) : Runtime.getRuntime().availableProcessors();
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(threads);
+        if (file.exists()) builder.load(OpeningBook.open(file));
+        int before = builder.entries.size();
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() { // BetterAI's own output is not wanted here
+            public void write(int b) {}
+        }));
+        try {
+            if (search) builder.addSearched(Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            else builder.addSelfPlay(Integer.parseInt(args[2]), Integer.parseInt(args[3]), Long.parseLong(args[4]));
+        } finally {
+            System.setOut(out);
+        }
+
+        builder.write(file);
+        out.println(file + ": " + builder.entries.size() + " positions (" + (builder.entries.size() - before) + " new)");
+        System.exit(0);
+    }
+
+    /** A book entry: the move in the canonical frame and its utility */
+    static class Entry {
+        final int move;
+        final double score;
+
+        Entry(int move, double score) {
+            this.move = move;
+            this.score = score;
+        }
+    }
+
+    private final HashMap<Long, Entry> entries = new HashMap<Long, Entry>();
+    private final ExecutorService pool;
+    private final ThreadLocal<TranspositionTable> tables = ThreadLocal.withInitial(() ->
+            new TranspositionTable(20, TranspositionTable.Replacement.DEPTH_PREFERRED));
+
+    public OpeningBookBuilder(int threads) {
+        pool = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Adds the entries of an existing book.
+     */
+    public void load(OpeningBook book) {
+        for (int i = 0; i < book.size(); i++)
+            entries.put(book.getKey(i), new Entry(book.getMove(i), book.getScore(i)));
+    }
+
+    /**
+     * Adds every position with a legal move up to the given number of plies from the start, searched to the
+     * given depth. Positions already in the book are not searched again.
+     */
+    public void addSearched(int plies, int depth) throws Exception {
+        ArrayList<BitBoardState> positions = new ArrayList<BitBoardState>();
+        HashSet<Long> seen = new HashSet<Long>();
+        ArrayList<BitBoardState> frontier = new ArrayList<BitBoardState>();
+        frontier.add(new BitBoardState(1));
+        for (int ply = 0; ply < plies; ply++) {
+            ArrayList<BitBoardState> nextFrontier = new ArrayList<BitBoardState>();
+            for (BitBoardState s : frontier) {
+                ArrayList<Position> moves = s.legalMoves();
+                if (moves.isEmpty()) continue;
+                long key = OpeningBook.key(own(s), opp(s));
+                if (!seen.add(key)) continue;
+                if (!entries.containsKey(key)) positions.add(s);
+                for (Position move : moves) {
+                    BitBoardState child = (BitBoardState) s.copy();
+                    child.insertToken(move);
+                    nextFrontier.add(child);
+                }
+            }
+            frontier = nextFrontier;
+        }
+
+        ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+        for (BitBoardState s : positions) {
+            results.add(pool.submit(() -> {
+                BetterAI ai = new BetterAI(0, depth, 1, false, tables.get());
+                ai.setOpeningBook(null);
+                ai.setEndgameEmpties(0);
+                Position move = ai.decideMove(s);
+                add(s, move, ai.getLastUtility());
+            }));
+        }
+        for (Future<?> result : results) result.get();
+    }
+
+    /**
+     * Plays the given number of games of BetterAI against itself with the given time per move, and adds the
+     * positions and moves of the first plies. The first two moves of every game are random.
+     */
+    public void addSelfPlay(int games, int plies, long timeMillis) throws Exception {
+        Random random = new Random(games);
+        ArrayList<Future<?>> results = new ArrayList<Future<?>>();
+        for (int g = 0; g < games; g++) {
+            long seed = random.nextLong();
+            results.add(pool.submit(() -> {
+                Random r = new Random(seed);
+                BetterAI ai = new BetterAI(timeMillis, 64, 1, false, tables.get());
+                ai.setOpeningBook(null);
+                BitBoardState s = new BitBoardState(1);
+                for (int ply = 0; ply < plies && !s.isFinished(); ply++) {
+                    ArrayList<Position> moves = s.legalMoves();
+                    if (moves.isEmpty()) {
+                        s.changePlayer();
+                        continue;
+                    }
+                    if (ply < 2) {
+                        s.insertToken(moves.get(r.nextInt(moves.size())));
+                        continue;
+                    }
+                    Position move = ai.decideMove(s);
+                    add(s, move, ai.getLastUtility());
+                    s.insertToken(move);
+                }
+            }));
+        }
+        for (Future<?> result : results) result.get();
+    }
+
+    private synchronized void add(BitBoardState s, Position move, double score) {
+        long own = own(s);
+        long opp = opp(s);
+        int canonicalMove = OpeningBook.toCanonical(own, opp, move.col * 8 + move.row);
+        entries.putIfAbsent(OpeningBook.key(own, opp), new Entry(canonicalMove, score));
+    }
+
+    private static long own(BitBoardState s) {
+        return s.getPlayerInTurn() == 1 ? s.getBlack() : s.getWhite();
+    }
+
+    private static long opp(BitBoardState s) {
+        return s.getPlayerInTurn() == 1 ? s.getWhite() : s.getBlack();
+    }
+
+    /**
+     * Writes the book to a new file that then replaces the given file.
+     */
+    public void write(File file) throws Exception {
+        int count = entries.size();
+        long[] keys = new long[count];
+        int[] moves = new int[count];
+        double[] scores = new double[count];
+        int i = 0;
+        for (java.util.Map.Entry<Long, Entry> e : entries.entrySet()) {
+            keys[i] = e.getKey();
+            moves[i] = e.getValue().move;
+            scores[i] = e.getValue().score;
+            i++;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        OpeningBook.write(tmp, keys, moves, scores, count);
+        if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+            throw new java.io.IOException("Could not replace " + file);
+        pool.shutdown();
+    }
+}
@@ -1,5 +1,7 @@
 import javax.swing.*;
 
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.lang.reflect.*;
 
@@ -82,10 +84,15 @@ public class Othello
 
         	// Setup of the frame containing the game
         	JFrame f = new JFrame();
-        	f.setSize((size+2)*100,(size+2)*100);
         	f.setTitle("Othello");
         	f.setDefaultCloseOperation (JFrame.EXIT_ON_CLOSE);
+        	f.addWindowListener(new WindowAdapter(){ // Stops the AI's search before the program exits
+        		public void windowClosing(WindowEvent e){
+        			g.close();
+        		}
+        	});
         	f.getContentPane().add(g);    
+        	f.pack();
         	f.setVisible(true);
         }
         catch (IOException e){
@@ -2,14 +2,20 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * GUI to show the Othello game and to listen for input for the user/human player. When it is the user's turn, 
- * (s)he clicks on the place where (s)he wants to place a token, and when it is the computer's turn, the 
- * player needs to click anywhere in the frame to make the computer take it's turn. The user is made aware
- * of any illegal moves, or when (s)he - or the computer - have to pass because no legal moves are possible.  
+ * (s)he clicks on the place where (s)he wants to place a token. When it is the computer's turn, the AI searches
+ * for its move on a background thread while the window stays responsive and shows how long it has been
+ * thinking; the move is played as soon as it is found, so games between two AIs play themselves. The user
+ * is made aware of any illegal moves, or when (s)he - or the computer - have to pass because no legal moves
+ * are possible.  
  * @author Mai Ajspur
  * @version 9.2.2018
  */
@@ -23,12 +29,36 @@ public class OthelloGUI extends JComponent implements MouseListener
     private boolean humanPlayer;	// Whether a human player is playing or not
     private IOthelloAI ai1;			// The AI for player 1 if there are no human player
     private IOthelloAI ai2;			// The AI for player 2 
+    private GameRecord record;		// The moves played so far
+    private GameRecordWriter recordWriter;	// Where the game is recorded when it is over, or null
 
-    // Images for drawing the game board
+    // The AIs search on this thread, so the event dispatch thread is free to repaint and handle input
+    private final ExecutorService searcher = Executors.newSingleThreadExecutor(r -> {
+    	Thread t = new Thread(r, "Othello AI");
+    	t.setDaemon(true);
+    	return t;
+    });
+    private CompletableFuture<Position> pendingMove;	// The move the AI in turn is searching for, or null
+    private long searchStart;						// System.nanoTime() when that search started
+    private final Timer progressTimer;				// Repaints the progress of the search
+    private boolean closed;							// Whether the game was closed, so no AI may search again
+    private static final int AI_MOVE_DELAY = 300;	// Milliseconds between the moves of two AIs, to follow the game
+
+    // Images for drawing the game board, imgSize pixels per place
     private Image 		part, blackPion, whitePion, background;
     private Image 		border_left, border_right, border_top, border_bottom;
     private Image 		corner_left_top, corner_left_bottom, corner_right_top, corner_right_bottom;
     private Image 		blackWon, whiteWon, tie;
+
+    // The board as shown, frame included, drawn once for the size of the window with the images scaled to it.
+    // After a move only the places that changed are drawn into it again and repainted.
+    private BufferedImage board;
+    private Graphics2D boardGraphics;
+    private int cellSize;							// Pixels per place in board
+    private final Image[] cells = new Image[3];	// A place with value 0 (empty), 1 (black) or 2 (white), scaled
+    private Image result;							// The scaled result if the game is over, else null
+    private boolean finished;						// Whether the game is over, updated after every move
+    private int forfeitedBy;						// The player whose AI lost by an illegal move, or 0
 	
     /**
      * Initializes game
@@ -56,95 +86,286 @@ public class OthelloGUI extends JComponent implements MouseListener
     	tie = ImageIO.read(new File("imgs/tie.png"));
 		
     	this.size = size;
-    	this.state = new GameState(size, 1); // Player 1 (human if there is any) goes first
+    	this.state = GameState.newGame(size, 1); // Player 1 (human if there is any) goes first
     	this.humanPlayer = humanPlayer;
     	if ( !humanPlayer )
     		this.ai1 = ai1;
     	this.ai2=ai2;
     	this.addMouseListener(this);
+    	this.setDoubleBuffered(true);
+    	int cell = preferredCellSize(size);
+    	this.setPreferredSize(new Dimension((size+2)*cell, (size+2)*cell));
+    	this.state.setBoardListener(this::placeChanged);
+    	this.progressTimer = new Timer(200, e -> repaintStatus());
+
+    	// The game is recorded if the system property othello.record names a file
+    	String black = humanPlayer ? Othello.HUMAN_CMD : ai1.getClass().getName();
+    	String white = ai2.getClass().getName();
+    	this.record = new GameRecord(size, 1, black, white);
+    	String recordFile = System.getProperty("othello.record");
+    	if ( recordFile != null )
+    		this.recordWriter = new GameRecordWriter(new File(recordFile), black, white);
+
+    	// The AI starts on its own if it has the first move
+    	SwingUtilities.invokeLater(this::startAiMoveIfInTurn);
+    }
+
+    /**
+     * Returns the pixels per place that fit a board of the given size on the screen, at most imgSize.
+     */
+    static int preferredCellSize(int size){
+    	if ( GraphicsEnvironment.isHeadless() )
+    		return imgSize;
+    	Dimension screen = Toolkit.getDefaultToolkit().getScreenSize();
+    	int cell = Math.min(screen.width, screen.height) * 9 / 10 / (size+2);
+    	return Math.max(8, Math.min(imgSize, cell));
     }
 
     /**
-     * Draws the current game board and shows if someone won.
+     * Shows the current game board and whether someone won. Only the board image is copied to the screen;
+     * it is drawn again when the window changes size, and otherwise changed place by place.
      */
     public void paint(Graphics g){
-		int[][] gameBoard = state.getBoard();
-    	this.setDoubleBuffered(true);
     	Insets in = getInsets();               
     	g.translate(in.left, in.top);            
+    	int cell = Math.max(1, Math.min(getWidth()-in.left-in.right, getHeight()-in.top-in.bottom) / (size+2));
+    	if ( board == null || cell != cellSize )
+    		drawBoard(cell);
+    	g.drawImage(board, 0, 0, this);
 
-    	for (int c = 0; c < size; c++){
-    		for (int r = 0; r < size; r++){
-    			int player = gameBoard[c][r];
-    			if (player == 0) // background
-    				g.drawImage(background, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			else if (player == 2) // white = player2
-    				g.drawImage(whitePion, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			else // black = player1
-    				g.drawImage(blackPion, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			g.drawImage(part, imgSize+imgSize*c, imgSize+imgSize*r, this);
-    			if (c == 0){
-    				g.drawImage(border_left, 0, imgSize+imgSize*r, this); 
-    				g.drawImage(border_right, size*imgSize+imgSize, imgSize+imgSize*r, this); 
-    			}
+    	if ( finished ){
+    		if ( result == null ){
+    			int[] tokens = state.countTokens();
+    			Image image = forfeitedBy == 1 ? whiteWon : forfeitedBy == 2 ? blackWon
+    						: tokens[0] > tokens[1] ? blackWon : tokens[0] < tokens[1] ? whiteWon : tie;
+    			result = scaled(image, image.getWidth(null)*cellSize/imgSize, image.getHeight(null)*cellSize/imgSize, null);
     		}
-    		g.drawImage(border_top, imgSize+imgSize*c, 0, this);
-    		g.drawImage(border_bottom, imgSize+imgSize*c, size*imgSize+imgSize, this);
+    		g.drawImage(result, size*cellSize/2-(cellSize/2), size*cellSize/2+(cellSize/4), this);
     	}
-    	g.drawImage(corner_left_top, 0, 0, this);
-    	g.drawImage(corner_left_bottom, 0, size*imgSize+imgSize, this);
-    	g.drawImage(corner_right_top, imgSize+imgSize*size, 0, this);
-    	g.drawImage(corner_right_bottom, imgSize+imgSize*size, size*imgSize+imgSize, this);
-		
-    	if ( state.isFinished() ){
-    		int[] tokens = state.countTokens();
-    		if ( tokens[0] > tokens[1] )
-    			g.drawImage(blackWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    		else if ( tokens[0] < tokens[1] )
-    			g.drawImage(whiteWon, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    		else
-    			g.drawImage(tie, size*imgSize/2-(imgSize/2), size*imgSize/2+(imgSize/4), this);
-    	}		
+    	else if ( pendingMove != null ){ // Progress of the AI's search, in the top border
+    		int player = state.getPlayerInTurn();
+    		IOthelloAI ai = player == 1 ? ai1 : ai2;
+    		String progress = "Player " + player + (player == 1 ? " (black)" : " (white)") + " is thinking... "
+    				+ String.format("%.1f s", (System.nanoTime() - searchStart) / 1e9);
+    		if ( ai instanceof BetterAI && !((BetterAI) ai).getProgress().isEmpty() )
+    			progress += ", " + ((BetterAI) ai).getProgress();
+    		g.setColor(Color.WHITE);
+    		g.drawString(progress, cellSize, cellSize/2);
+    	}
+    }
+
+    /**
+     * Draws the frame and all places into a new board image with the given pixels per place, scaling the
+     * images to that size once.
+     */
+    private void drawBoard(int cell){
+    	cellSize = cell;
+    	cells[0] = scaled(background, cell, cell, part);
+    	cells[1] = scaled(blackPion, cell, cell, part);
+    	cells[2] = scaled(whitePion, cell, cell, part);
+    	result = null;
+    	if ( boardGraphics != null )
+    		boardGraphics.dispose();
+    	board = new BufferedImage((size+2)*cell, (size+2)*cell, BufferedImage.TYPE_INT_ARGB);
+    	boardGraphics = board.createGraphics();
+    	boardGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    	Graphics2D g = boardGraphics;
+    	int end = (size+1)*cell;
+    	for (int i = 0; i < size; i++){
+    		g.drawImage(border_left, 0, cell+cell*i, cell, cell, null);
+    		g.drawImage(border_right, end, cell+cell*i, cell, cell, null);
+    		g.drawImage(border_top, cell+cell*i, 0, cell, cell, null);
+    		g.drawImage(border_bottom, cell+cell*i, end, cell, cell, null);
+    	}
+    	g.drawImage(corner_left_top, 0, 0, cell, cell, null);
+    	g.drawImage(corner_left_bottom, 0, end, cell, cell, null);
+    	g.drawImage(corner_right_top, end, 0, cell, cell, null);
+    	g.drawImage(corner_right_bottom, end, end, cell, cell, null);
+
+    	int[][] gameBoard = state.getBoard();
+    	for (int c = 0; c < size; c++)
+    		for (int r = 0; r < size; r++)
+    			g.drawImage(cells[gameBoard[c][r]], cell+cell*c, cell+cell*r, null);
+    }
+
+    /**
+     * Returns the image scaled to the given size, with the overlay, if any, scaled and drawn on top.
+     */
+    private static Image scaled(Image image, int width, int height, Image overlay){
+    	BufferedImage scaled = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+    	Graphics2D g = scaled.createGraphics();
+    	g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    	g.drawImage(image, 0, 0, width, height, null);
+    	if ( overlay != null )
+    		g.drawImage(overlay, 0, 0, width, height, null);
+    	g.dispose();
+    	return scaled;
+    }
+
+    /**
+     * Called by the game state for every place a move changes: draws the place into the board image and
+     * repaints only that place. Moves are made on the event dispatch thread.
+     */
+    private void placeChanged(int place, int oldValue, int newValue){
+    	if ( board == null )
+    		return;
+    	int x = cellSize + cellSize*(place / size);
+    	int y = cellSize + cellSize*(place % size);
+    	boardGraphics.drawImage(cells[newValue], x, y, null);
+    	Insets in = getInsets();
+    	repaint(in.left + x, in.top + y, cellSize, cellSize);
+    }
+
+    /**
+     * Repaints the top border, where the progress of the search is shown.
+     */
+    private void repaintStatus(){
+    	repaint(0, 0, getWidth(), getInsets().top + Math.max(cellSize, 1));
     }
 
+    /**
+     * Plays the human player's move, if it is his/her turn. Clicks while an AI is thinking are ignored.
+     */
     public void mouseClicked(MouseEvent e){
+    	if ( humanPlayer && state.getPlayerInTurn() == 1 && pendingMove == null )
+    		playMove(humanSelectedPlace(e));
+    }
+
+    /**
+     * Plays the given move for the player in turn, or tells that it is illegal, and then lets the AI move if it
+     * is its turn. An AI that chooses an illegal move loses the game. Runs on the event dispatch thread.
+     */
+    private void playMove(Position place){
     	int currentPlayer = state.getPlayerInTurn();
-    	if ( !state.isFinished() ){
-    		Position place = getPlaceForNextToken(e);
-    		if ( state.insertToken(place) ){ // Chosen move is legal
-				boolean nextPlayerCannotMove = state.legalMoves().isEmpty();
+    	if ( !finished ){
+    		if ( place != null && state.insertToken(place) ){ // Chosen move is legal
+    			record.addMove(place);
+				boolean nextPlayerCannotMove = !state.hasLegalMove();
    				if ( nextPlayerCannotMove ){ // The next player cannot move
-					repaint();
    					state.changePlayer();
+   					record.addPass();
    					if ( humanPlayer ){ // If there is a human involved, (s)he needs to know this
-   	  					boolean canMoveAfterwards = !state.legalMoves().isEmpty();
+   	  					boolean canMoveAfterwards = state.hasLegalMove();
    	   					if ( canMoveAfterwards ){
    	   						String message = currentPlayer == 1 ? "Your opponent has no legal moves. It is your turn again." 
-   	   													 	    : "You have no legal moves. Your opponent will make another move (click again).";
+   	   													 	    : "You have no legal moves. Your opponent will make another move.";
    	   						JOptionPane.showMessageDialog(this, message);
    	   					}  						
    					}
    				}
  			}
-   			else 
-   				illegalMoveAttempted(place); 		
-    		repaint();
+   			else {
+   				illegalMoveAttempted(place);
+   				if ( !humanPlayer || currentPlayer == 2 ){ // The AI forfeits, as in a Tournament
+   					forfeitedBy = currentPlayer;
+   					finished = true;
+   					record.setForfeit(currentPlayer);
+   					saveRecord();
+   					repaint();
+   				}
+   				return;
+   			}
+    		finished = state.isFinished();
+    		if ( finished ){
+    			record.setResult(state);
+    			saveRecord();
+    			repaint();
+    		}
+    		else
+    			repaintStatus();
+    		if ( humanPlayer )
+    			startAiMoveIfInTurn();
+    		else { // Pause between the moves of two AIs
+    			Timer next = new Timer(AI_MOVE_DELAY, e -> startAiMoveIfInTurn());
+    			next.setRepeats(false);
+    			next.start();
+    		}
     	}
     }
-    
+
     /**
-     * Get a position to place the next token (i.e. read mouse click if human
-     * player is in turn, otherwise ask corresponding AI)
+     * Starts the search of the AI in turn on the background thread, unless the game is over or it is the human
+     * player's turn. The move is played on the event dispatch thread when the search completes.
      */
-    private Position getPlaceForNextToken(MouseEvent e){
-    	if ( state.getPlayerInTurn() == 2 ) 
-			return ai2.decideMove(state);
-		else {
-			if ( humanPlayer )
-				return humanSelectedPlace(e);
-			else
-				return ai1.decideMove(state);
-		}
+    private void startAiMoveIfInTurn(){
+    	if ( closed || finished || pendingMove != null || (humanPlayer && state.getPlayerInTurn() == 1) )
+    		return;
+    	IOthelloAI ai = state.getPlayerInTurn() == 1 ? ai1 : ai2;
+    	CompletableFuture<Position> move = ai.decideMoveAsync(state, searcher);
+    	pendingMove = move;
+    	searchStart = System.nanoTime();
+    	progressTimer.start();
+    	move.whenComplete((place, error) -> SwingUtilities.invokeLater(() -> aiMoveDone(move, place, error)));
+    }
+
+    /**
+     * Plays the move the AI found, or reports the exception it threw. Runs on the event dispatch thread.
+     */
+    private void aiMoveDone(CompletableFuture<Position> move, Position place, Throwable error){
+    	if ( move != pendingMove ) // Cancelled by close()
+    		return;
+    	pendingMove = null;
+    	progressTimer.stop();
+    	if ( error != null ){
+    		Throwable cause = error.getCause() != null ? error.getCause() : error;
+    		JOptionPane.showMessageDialog(this, "The AI for player " + state.getPlayerInTurn() + " failed: " + cause,
+    				"AI Error", JOptionPane.ERROR_MESSAGE);
+    		repaintStatus();
+    		return;
+    	}
+    	playMove(place);
+    }
+
+    /**
+     * Ends the game: cancels the search in progress, which stops the AI, and closes the AIs on the search
+     * thread once that search has returned, which ends the thread. An unfinished game is not recorded, but
+     * the record file is closed. Called when the window is closed or the board is removed from it. Runs on
+     * the event dispatch thread.
+     */
+    public void close(){
+    	if ( closed )
+    		return;
+    	closed = true;
+    	progressTimer.stop();
+    	if ( pendingMove != null ){
+    		pendingMove.cancel(true);
+    		pendingMove = null;
+    	}
+    	searcher.execute(() -> {
+    		if ( ai1 != null )
+    			ai1.close();
+    		ai2.close();
+    	});
+    	searcher.shutdown();
+    	if ( recordWriter != null ){
+    		try {
+    			recordWriter.close();
+    		} catch (IOException e) {
+    			System.err.println("The record file could not be closed: " + e.getMessage());
+    		}
+    		recordWriter = null;
+    	}
+    }
+
+    @Override
+    public void removeNotify(){
+    	close();
+    	super.removeNotify();
+    }
+
+    /**
+     * Writes the record of the finished game, whose result has been set, if games are recorded
+     */
+    private void saveRecord(){
+    	if ( recordWriter == null )
+    		return;
+    	try {
+    		recordWriter.write(record);
+    		recordWriter.close();
+    	} catch (IOException e) {
+    		JOptionPane.showMessageDialog(this, "The game could not be recorded: " + e.getMessage());
+    	}
+    	recordWriter = null;
     }
 
     /**
@@ -157,7 +378,8 @@ public class OthelloGUI extends JComponent implements MouseListener
 		else {
 			JOptionPane.showMessageDialog(this, "The AI for player "+ currentPlayer + 
 				(currentPlayer == 1 ? " (black)" : " (white)") + " chose an invalid "
-   				+ "move (position " + place +"). Please debug!", "Invalid Move", JOptionPane.ERROR_MESSAGE); 		
+   				+ "move (position " + place +") and loses the game. Please debug!", "Invalid Move",
+   				JOptionPane.ERROR_MESSAGE);
 		}
     }
     
@@ -167,8 +389,8 @@ public class OthelloGUI extends JComponent implements MouseListener
     private Position humanSelectedPlace(MouseEvent e){
     	int x = e.getX();
     	int y = e.getY();
-    	if ( imgSize <= x && x <= imgSize*(size+1) && imgSize <= y && y <= imgSize*(size+1) ){ 
-    		return new Position((x-imgSize)/imgSize, (y-imgSize)/imgSize);
+    	if ( cellSize <= x && x < cellSize*(size+1) && cellSize <= y && y < cellSize*(size+1) ){ 
+    		return new Position((x-cellSize)/cellSize, (y-cellSize)/cellSize);
     	}
     	return new Position(-1,-1);
     }
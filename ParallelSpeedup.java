@@ -0,0 +1,81 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures the speedup of the parallel search of {@link BetterAI}. A fixed set of positions, reached by random
+ * play from the start position, is searched to a fixed depth in deterministic mode with 1, 2, 4, ... threads.
+ * For every thread count the time, the nodes per second and the speedup over one thread are printed, and the
+ * chosen moves are checked to be the same as those of the single-threaded search.
+ */
+public class ParallelSpeedup {
+
+    /**
+     * Valid arguments: [maxThreads] [depth] [positions] [plies]
+     * Defaults to all available processors, depth 8, 20 positions and 20 random plies from the start.
+     */
+    public static void main(String[] args) {
+        int maxThreads = args.length >= 1 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int depth = args.length >= 2 ? Integer.parseInt(args[1]) : 8;
+        int count = args.length >= 3 ? Integer.parseInt(args[2]) : 20;
+        int plies = args.length >= 4 ? Integer.parseInt(args[3]) : 20;
+
+        ArrayList<GameState> positions = randomPositions(count, plies, new Random(1));
+        System.out.println("threads\tms\tnodes\tknodes/s\tspeedup\tsame moves");
+
+        PrintStream out = System.out;
+        PrintStream silent = new PrintStream(new OutputStream() {
+            public void write(int b) {}
+        });
+        Position[] reference = null;
+        long referenceTime = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            BetterAI ai = new BetterAI(0, depth, threads, true);
+            Position[] moves = new Position[positions.size()];
+            long nodes = 0;
+            long start = System.nanoTime();
+            System.setOut(silent);
+            try {
+                for (int i = 0; i < positions.size(); i++) {
+                    moves[i] = ai.decideMove(positions.get(i));
+                    nodes += ai.getNodes();
+                }
+            } finally {
+                System.setOut(out);
+            }
+            long time = System.nanoTime() - start;
+            ai.close();
+
+            boolean same = true;
+            if (reference == null) {
+                reference = moves;
+                referenceTime = time;
+            } else {
+                for (int i = 0; i < moves.length; i++)
+                    same &= moves[i].equals(reference[i]);
+            }
+            System.out.println(threads + "\t" + time / 1000000 + "\t" + nodes + "\t" + nodes * 1000000 / time
+                    + "\t" + String.format("%.2f", (double) referenceTime / time) + "\t" + (same ? "yes" : "NO"));
+            if (threads < maxThreads && threads * 2 > maxThreads) threads = maxThreads / 2;
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Returns positions reached by playing the given number of random plies from the start position.
+     */
+    static ArrayList<GameState> randomPositions(int count, int plies, Random random) {
+        ArrayList<GameState> positions = new ArrayList<GameState>();
+        while (positions.size() < count) {
+            GameState s = GameState.newGame(8, 1);
+            for (int i = 0; i < plies && !s.isFinished(); i++) {
+                ArrayList<Position> moves = s.legalMoves();
+                if (moves.isEmpty()) s.changePlayer();
+                else s.insertToken(moves.get(random.nextInt(moves.size())));
+            }
+            if (!s.isFinished() && s.hasLegalMove()) positions.add(s);
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Pattern based evaluation function for the 8x8 board. The board is covered by patterns (the edges with
+ * the X-squares, the 3x3 and 2x5 corner blocks, the lines next to the edges and the diagonals), each in all
+ * of its symmetric orientations. The contents of the places of a pattern, read as a number in base 3 (0
+ * empty, 1 black, 2 white), index a table of weights, and the evaluation is the sum of the weights of all
+ * patterns: the expected final disc difference black - white. There is one set of tables per game phase,
+ * given by the number of tokens on the board.
+ *
+ * Attached to a state, the pattern indices are kept up to date by a {@link BoardListener} as moves are made
+ * and taken back, so an evaluation is one table lookup per pattern. Other sizes use {@link HeuristicEvaluator}.
+ *
+ * Weights file layout (big-endian): the int MAGIC, the int number of phases, the int number of pattern types,
+ * the int length of every type, and then for every phase and type 3^length float weights.
+ */
+public class PatternEvaluator implements Evaluator {
+    public static final int MAGIC = 0x50455731;     // "PEW1"
+
+    // The pattern types, as places (col, row) of one orientation
+    static final int[][][] TYPES = {
+        {{0, 0}, {1, 0}, {2, 0}, {3, 0}, {4, 0}, {5, 0}, {6, 0}, {7, 0}, {1, 1}, {6, 1}},  // Edge and X-squares
+        {{0, 0}, {1, 0}, {2, 0}, {0, 1}, {1, 1}, {2, 1}, {0, 2}, {1, 2}, {2, 2}},          // 3x3 corner
+        {{0, 0}, {1, 0}, {2, 0}, {3, 0}, {4, 0}, {0, 1}, {1, 1}, {2, 1}, {3, 1}, {4, 1}},  // 2x5 corner
+        line(1), line(2), line(3),
+        diagonal(0), diagonal(1), diagonal(2), diagonal(3), diagonal(4)
+    };
+
+    static final int[] POW3 = new int[11];
+
+    // Every orientation of every type is an instance with its own places (index col*8+row)
+    static final int INSTANCES;
+    static final int[] INSTANCE_TYPE;
+    static final int[][] INSTANCE_PLACES;
+    // For every place, the instances it is in and its power of 3 in each of them
+    static final int[][] PLACE_INSTANCES = new int[64][];
+    static final int[][] PLACE_POWERS = new int[64][];
+
+    static {
+        POW3[0] = 1;
+        for (int i = 1; i < POW3.length; i++) POW3[i] = 3 * POW3[i - 1];
+
+        ArrayList<Integer> types = new ArrayList<Integer>();
+        ArrayList<int[]> places = new ArrayList<int[]>();
+        for (int type = 0; type < TYPES.length; type++) {
+            ArrayList<int[]> orientations = new ArrayList<int[]>();
+            for (int t = 0; t < Symmetry.COUNT; t++) {
+                int[] p = new int[TYPES[type].length];
+                for (int i = 0; i < p.length; i++)
+                    p[i] = Symmetry.transformPlace(TYPES[type][i][0] * 8 + TYPES[type][i][1], t);
+                boolean seen = false;
+                for (int[] o : orientations) seen |= Arrays.equals(o, p);
+                if (!seen) orientations.add(p);
+            }
+            for (int[] p : orientations) {
+                types.add(type);
+                places.add(p);
+            }
+        }
+        INSTANCES = types.size();
+        INSTANCE_TYPE = new int[INSTANCES];
+        INSTANCE_PLACES = new int[INSTANCES][];
+        int[] count = new int[64];
+        for (int i = 0; i < INSTANCES; i++) {
+            INSTANCE_TYPE[i] = types.get(i);
+            INSTANCE_PLACES[i] = places.get(i);
+            for (int place : INSTANCE_PLACES[i]) count[place]++;
+        }
+        for (int place = 0; place < 64; place++) {
+            PLACE_INSTANCES[place] = new int[count[place]];
+            PLACE_POWERS[place] = new int[count[place]];
+            count[place] = 0;
+        }
+        for (int i = 0; i < INSTANCES; i++) {
+            for (int k = 0; k < INSTANCE_PLACES[i].length; k++) {
+                int place = INSTANCE_PLACES[i][k];
+                PLACE_INSTANCES[place][count[place]] = i;
+                PLACE_POWERS[place][count[place]] = POW3[k];
+                count[place]++;
+            }
+        }
+    }
+
+    private static int[][] line(int row) {
+        int[][] places = new int[8][];
+        for (int col = 0; col < 8; col++) places[col] = new int[]{col, row};
+        return places;
+    }
+
+    // The diagonal from (0, offset) to (7 - offset, 7)
+    private static int[][] diagonal(int offset) {
+        int[][] places = new int[8 - offset][];
+        for (int i = 0; i < places.length; i++) places[i] = new int[]{i, i + offset};
+        return places;
+    }
+
+    private final int phases;
+    private final float[][][] weights;      // [phase][type][index]
+    private final Evaluator fallback = new HeuristicEvaluator();
+
+    /**
+     * An evaluator with all weights 0 and the given number of phases.
+     */
+    public PatternEvaluator(int phases) {
+        this.phases = phases;
+        weights = new float[phases][TYPES.length][];
+        for (int phase = 0; phase < phases; phase++)
+            for (int type = 0; type < TYPES.length; type++)
+                weights[phase][type] = new float[POW3[TYPES[type].length]];
+    }
+
+    /**
+     * Reads the weights from the given file.
+     */
+    public static PatternEvaluator load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC)
+                throw new IOException(file + " is not a weights file");
+            int phases = buffer.getInt();
+            if (buffer.getInt() != TYPES.length)
+                throw new IOException(file + " has other patterns");
+            for (int[][] type : TYPES)
+                if (buffer.getInt() != type.length)
+                    throw new IOException(file + " has other patterns");
+            PatternEvaluator evaluator = new PatternEvaluator(phases);
+            long expected = buffer.position();
+            for (int[][] type : TYPES) expected += 4L * phases * POW3[type.length];
+            if (expected > channel.size())
+                throw new IOException(file + " is truncated");
+            FloatBuffer floats = buffer.asFloatBuffer();
+            for (int phase = 0; phase < phases; phase++)
+                for (int type = 0; type < TYPES.length; type++)
+                    floats.get(evaluator.weights[phase][type]);
+            return evaluator;
+        }
+    }
+
+    /**
+     * Writes the weights to the given file.
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(phases);
+            out.writeInt(TYPES.length);
+            for (int[][] type : TYPES) out.writeInt(type.length);
+            for (int phase = 0; phase < phases; phase++)
+                for (int type = 0; type < TYPES.length; type++)
+                    for (float w : weights[phase][type]) out.writeFloat(w);
+        }
+    }
+
+    public int getPhases() {
+        return phases;
+    }
+
+    /**
+     * Returns the weight table of the given phase and pattern type, which may be changed.
+     */
+    public float[] getWeights(int phase, int type) {
+        return weights[phase][type];
+    }
+
+    /**
+     * Returns the phase of a position with the given number of tokens on the board.
+     */
+    public int phase(int tokens) {
+        return Math.min(phases - 1, Math.max(0, tokens - 4) * phases / 60);
+    }
+
+    /**
+     * Computes the index of every instance for the given bitboards into indices.
+     */
+    public static void indices(long black, long white, int[] indices) {
+        for (int i = 0; i < INSTANCES; i++) {
+            int index = 0;
+            int[] places = INSTANCE_PLACES[i];
+            for (int k = places.length - 1; k >= 0; k--) {
+                long bit = 1L << places[k];
+                index = 3 * index + ((black & bit) != 0 ? 1 : (white & bit) != 0 ? 2 : 0);
+            }
+            indices[i] = index;
+        }
+    }
+
+    /**
+     * Returns the expected final disc difference black - white for the given instance indices and phase.
+     */
+    public double score(int[] indices, int phase) {
+        float[][] w = weights[phase];
+        double score = 0;
+        for (int i = 0; i < INSTANCES; i++) score += w[INSTANCE_TYPE[i]][indices[i]];
+        return score;
+    }
+
+    public double evaluate(GameState s) {
+        if (s.getSize() != 8) return fallback.evaluate(s);
+        BoardListener listener = s.getBoardListener();
+        if (listener instanceof Tracker && ((Tracker) listener).owner() == this) {
+            Tracker tracker = (Tracker) listener;
+            return -score(tracker.indices, phase(tracker.tokens)) / 64;
+        }
+        long[] tokens = bitboards(s);
+        int[] indices = new int[INSTANCES];
+        indices(tokens[0], tokens[1], indices);
+        return -score(indices, phase(Long.bitCount(tokens[0] | tokens[1]))) / 64;
+    }
+
+    // Returns the bitboards of black and white of an 8x8 state
+    private static long[] bitboards(GameState s) {
+        if (s instanceof BitBoardState)
+            return new long[]{((BitBoardState) s).getBlack(), ((BitBoardState) s).getWhite()};
+        long[] tokens = new long[2];
+        int[][] board = s.getBoard();
+        for (int col = 0; col < 8; col++)
+            for (int row = 0; row < 8; row++)
+                if (board[col][row] != 0) tokens[board[col][row] - 1] |= 1L << (col * 8 + row);
+        return tokens;
+    }
+
+    @Override
+    public void attach(GameState s) {
+        if (s.getSize() == 8) s.setBoardListener(new Tracker(s));
+    }
+
+    // Keeps the instance indices and the number of tokens of a state up to date
+    private class Tracker implements BoardListener {
+        final int[] indices = new int[INSTANCES];
+        int tokens;
+
+        Tracker(GameState s) {
+            long[] bitboards = bitboards(s);
+            indices(bitboards[0], bitboards[1], indices);
+            tokens = Long.bitCount(bitboards[0] | bitboards[1]);
+        }
+
+        PatternEvaluator owner() {
+            return PatternEvaluator.this;
+        }
+
+        public void placeChanged(int place, int oldValue, int newValue) {
+            if (oldValue == 0) tokens++;
+            if (newValue == 0) tokens--;
+            int[] instances = PLACE_INSTANCES[place];
+            int[] powers = PLACE_POWERS[place];
+            int delta = newValue - oldValue;
+            for (int i = 0; i < instances.length; i++) indices[instances[i]] += delta * powers[i];
+        }
+    }
+}
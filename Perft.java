@@ -0,0 +1,152 @@
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Move generation test: counts the number of positions (leaf nodes) reached after exactly the given number of
+ * plies from the start position, using only legalMoves and makeMove/unmakeMove of {@link GameState}. A player
+ * without legal moves passes, which counts as a ply like in {@link BetterAI}; a finished game counts as one leaf.
+ *
+ * Each count is compared with the known count for the standard 8x8 start, so a faster move generator can be
+ * checked against the reference numbers and against the array based implementation. At the last ply the moves
+ * are only counted, not made; subtree counts are cached in a hash table; and the moves at the root are
+ * divided between threads. The nodes per second are reported for every depth.
+ */
+public class Perft
+{
+    // Leaf counts of the 8x8 start position for depth 0, 1, 2, ...
+    static final long[] REFERENCE = {
+        1L, 4L, 12L, 56L, 244L, 1396L, 8200L, 55092L, 390216L, 3005288L, 24571284L, 212258800L, 1939886636L,
+        18429641748L, 184042084512L
+    };
+
+    /**
+     * Valid arguments: depth [threads] [engine] [size]
+     * engine is "fast" (the implementation chosen by GameState.newGame) or "array"; the defaults are one thread
+     * per processor, the fast engine and size 8.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java Perft depth [threads] [engine] [size]");
+            System.err.println("\tdepth\t - Number of plies to count leaf nodes for (all depths from 1 are counted).");
+            System.err.println("\tthreads\t - Number of threads. Defaults to the number of processors.");
+            System.err.println("\tengine\t - 'fast' for the fastest GameState for the size or 'array'. Defaults to fast.");
+            System.err.println("\tsize\t - Must be an even integer greater or equal to 4. Defaults to 8.");
+            System.exit(1);
+        }
+        int depth = Integer.parseInt(args[0]);
+        int threads = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        boolean array = args.length >= 3 && args[2].equalsIgnoreCase("array");
+        int size = args.length >= 4 ? Integer.parseInt(args[3]) : 8;
+
+        GameState start = array ? new GameState(size, 1) : GameState.newGame(size, 1);
+        Perft perft = new Perft(22, threads);
+        boolean allOk = true;
+        System.out.println("depth\tleaves\tms\tknodes/s\treference");
+        for (int d = 1; d <= depth; d++) {
+            long t = System.nanoTime();
+            long leaves = perft.count(start, d);
+            long nanos = Math.max(1, System.nanoTime() - t);
+            String check = "";
+            if (size == 8 && d < REFERENCE.length) {
+                boolean ok = leaves == REFERENCE[d];
+                allOk &= ok;
+                check = ok ? "ok" : "MISMATCH (expected " + REFERENCE[d] + ")";
+            }
+            System.out.println(d + "\t" + leaves + "\t" + nanos / 1000000 + "\t" + perft.nodes * 1000000 / nanos + "\t" + check);
+        }
+        perft.shutdown();
+        System.exit(allOk ? 0 : 1);
+    }
+
+    private final long[] keys;      // key ^ count, so a torn entry does not match
+    private final long[] counts;
+    private final int mask;
+    private final int threads;
+    private final ExecutorService pool;
+    private long nodes;             // Nodes visited by the last count, including cache hits but not bulk counted leaves
+
+    /**
+     * @param cacheBits 2^cacheBits subtree counts are cached.
+     * @param threads Number of threads the root moves are divided between.
+     */
+    public Perft(int cacheBits, int threads) {
+        keys = new long[1 << cacheBits];
+        counts = new long[1 << cacheBits];
+        mask = (1 << cacheBits) - 1;
+        this.threads = threads;
+        pool = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    }
+
+    public void shutdown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    /**
+     * Returns the number of leaf nodes depth plies from s. s is not changed.
+     */
+    public long count(GameState s, int depth) throws Exception {
+        if (depth < 2 || pool == null) {
+            long[] visited = new long[1];
+            long leaves = perft(s.copy(), depth, visited);
+            nodes = visited[0];
+            return leaves;
+        }
+        ArrayList<Position> moves = s.legalMoves();
+        if (moves.isEmpty()) { // A pass or the end of the game at the root: nothing to divide
+            long[] visited = new long[1];
+            long leaves = perft(s.copy(), depth, visited);
+            nodes = visited[0];
+            return leaves;
+        }
+        ArrayList<Future<long[]>> results = new ArrayList<Future<long[]>>();
+        for (Position move : moves) {
+            GameState child = s.copy();
+            child.insertToken(move);
+            results.add(pool.submit(() -> {
+                long[] visited = new long[1];
+                long leaves = perft(child, depth - 1, visited);
+                return new long[]{leaves, visited[0]};
+            }));
+        }
+        long leaves = 0;
+        nodes = 1;
+        for (Future<long[]> result : results) {
+            leaves += result.get()[0];
+            nodes += result.get()[1];
+        }
+        return leaves;
+    }
+
+    private long perft(GameState s, int depth, long[] visited) {
+        visited[0]++;
+        if (depth == 0) return 1;
+
+        ArrayList<Position> moves = s.legalMoves();
+        if (moves.isEmpty()) {
+            s.pass();
+            boolean finished = !s.hasLegalMove();
+            long leaves = finished ? 1 : depth == 1 ? 1 : perft(s, depth - 1, visited);
+            s.unpass();
+            return leaves;
+        }
+        if (depth == 1) return moves.size(); // Bulk counting of the last ply
+
+        long key = s.getHash() ^ (depth * 0x9E3779B97F4A7C15L);
+        int i = (int) key & mask;
+        long cached = counts[i];
+        if ((keys[i] ^ cached) == key) return cached;
+
+        long leaves = 0;
+        for (Position move : moves) {
+            long undo = s.makeMove(move);
+            leaves += perft(s, depth - 1, visited);
+            s.unmakeMove(move, undo);
+        }
+        counts[i] = leaves;
+        keys[i] = key ^ leaves;
+        return leaves;
+    }
+}
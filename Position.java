@@ -6,11 +6,29 @@
 public class Position{
 	int col;
 	int row;		
+
+	// The shared instances returned by at(col, row), [col*MAX_SHARED + row]
+	private static final int MAX_SHARED = 64;
+	private static final Position[] SHARED = new Position[MAX_SHARED * MAX_SHARED];
+	static {
+		for (int i = 0; i < SHARED.length; i++)
+			SHARED[i] = new Position(i / MAX_SHARED, i % MAX_SHARED);
+	}
 		
 	public Position(int col, int row){
 		this.col = col;
 		this.row = row;
 	}
+
+	/**
+	 * Returns a position equal to new Position(col, row). For the places of boards up to 64x64 it is the
+	 * same shared instance every time, so no object is created; it must not be changed.
+	 */
+	public static Position at(int col, int row){
+		if ( col >= 0 && row >= 0 && col < MAX_SHARED && row < MAX_SHARED )
+			return SHARED[col * MAX_SHARED + row];
+		return new Position(col, row);
+	}
 	
 	@Override
     public boolean equals(Object o) {
@@ -23,6 +41,11 @@ public class Position{
         Position p = (Position) o;
         return p.row == this.row && p.col == this.col;
     }
+
+	@Override
+	public int hashCode(){
+		return 31 * col + row;
+	}
 	
 	@Override
 	public String toString(){
@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Parameters of Multi-ProbCut, the selective search of {@link BetterAI}. For a node searched to a given depth
+ * in a given stage of the game, the value v of a search to a shallower depth predicts the value of the deep
+ * search as a*v + b, with a standard error sigma. If the prediction is more than threshold*sigma above beta
+ * (or below alpha), the deep search would almost certainly fail high (or low), so the node is cut off after
+ * only the shallow search. Each check costs two shallow searches with an empty window.
+ *
+ * A node may have several checks, with different shallow depths, which are tried from the shallowest. The
+ * game is divided into STAGES by the number of tokens on the board, as the quality of the prediction changes
+ * over the game. The parameters hold for one board size. They are fitted by {@link ProbCutCalibrator} and kept
+ * in a text file: a line "size n" and then one check per line: stage depth shallow a b sigma. Lines starting
+ * with # are comments.
+ */
+public class ProbCut {
+    public static final int STAGES = 4;
+
+    /** One check: the deep value is predicted as a*v + b from the value v at the shallow depth */
+    public static class Cut {
+        public final int shallow;
+        public final double a;
+        public final double b;
+        public final double sigma;
+
+        public Cut(int shallow, double a, double b, double sigma) {
+            this.shallow = shallow;
+            this.a = a;
+            this.b = b;
+            this.sigma = sigma;
+        }
+    }
+
+    private static final Cut[] NONE = new Cut[0];
+
+    private final int size;
+    private Cut[][][] cuts = new Cut[STAGES][0][];     // [stage][depth], sorted by shallow depth
+
+    /**
+     * Creates parameters without any checks for the given board size.
+     */
+    public ProbCut(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns the board size the parameters hold for.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the stage of a position with the given number of tokens on a board of the given size.
+     */
+    public static int stage(int tokens, int size) {
+        int stage = (tokens - 4) * STAGES / Math.max(1, size * size - 4);
+        return Math.max(0, Math.min(STAGES - 1, stage));
+    }
+
+    /**
+     * Returns the checks for a node searched to the given depth in the given stage, from the shallowest.
+     */
+    public Cut[] cuts(int stage, int depth) {
+        Cut[][] byDepth = cuts[stage];
+        if (depth >= byDepth.length || byDepth[depth] == null) return NONE;
+        return byDepth[depth];
+    }
+
+    /**
+     * Adds a check, replacing any with the same stage, depth and shallow depth. a must be positive and the
+     * shallow depth less than the depth.
+     */
+    public void set(int stage, int depth, int shallow, double a, double b, double sigma) {
+        if (a <= 0 || shallow < 1 || shallow >= depth)
+            throw new IllegalArgumentException("Not a valid check: depth " + depth + ", shallow " + shallow + ", a " + a);
+        if (depth >= cuts[stage].length) cuts[stage] = Arrays.copyOf(cuts[stage], depth + 1);
+        Cut[] old = cuts(stage, depth);
+        Cut[] updated = new Cut[old.length + 1];
+        int n = 0;
+        for (Cut c : old)
+            if (c.shallow != shallow) updated[n++] = c;
+        updated[n++] = new Cut(shallow, a, b, sigma);
+        updated = Arrays.copyOf(updated, n);
+        Arrays.sort(updated, (x, y) -> Integer.compare(x.shallow, y.shallow));
+        cuts[stage][depth] = updated;
+    }
+
+    /**
+     * Returns true if there are no checks at all, so the search is full width.
+     */
+    public boolean isEmpty() {
+        for (Cut[][] byDepth : cuts)
+            for (Cut[] c : byDepth)
+                if (c != null && c.length > 0) return false;
+        return true;
+    }
+
+    public static ProbCut load(File file) throws IOException {
+        ProbCut probCut = null;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                try {
+                    if (probCut == null) {
+                        if (!fields[0].equals("size")) throw new IllegalArgumentException();
+                        probCut = new ProbCut(Integer.parseInt(fields[1]));
+                        continue;
+                    }
+                    probCut.set(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                            Double.parseDouble(fields[3]), Double.parseDouble(fields[4]), Double.parseDouble(fields[5]));
+                } catch (RuntimeException e) {
+                    throw new IOException(file + ":" + number + ": not " + (probCut == null ? "a size" : "a check") + ": " + line);
+                }
+            }
+        }
+        if (probCut == null) throw new IOException(file + ": no size");
+        return probCut;
+    }
+
+    public void write(File file) throws IOException {
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println("size " + size);
+            out.println("# stage depth shallow a b sigma");
+            for (int stage = 0; stage < STAGES; stage++)
+                for (int depth = 0; depth < cuts[stage].length; depth++)
+                    for (Cut c : cuts(stage, depth))
+                        out.println(stage + " " + depth + " " + c.shallow + " " + c.a + " " + c.b + " " + c.sigma);
+        }
+    }
+}
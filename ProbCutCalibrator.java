@@ -0,0 +1,177 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline calibration of the {@link ProbCut} parameters of BetterAI. BetterAI plays games against itself on
+ * all cores, each starting with random moves, and every position of the games is searched full width to every
+ * depth from 1 to the maximum, each search with a cleared transposition table, so that no search depends on
+ * the entries of another. For every stage of the game and every pair of a depth d and a shallow depth d - 2
+ * or d - 4 (the same parity, as the values of odd and even depths differ), the values at depth d are fitted
+ * to those at the shallow depth by least squares: the fit gives a and b, and the standard deviation of the
+ * residuals gives sigma. The parameters are written to a file that BetterAI loads (betterai.probcut).
+ */
+public class ProbCutCalibrator
+{
+    public static final int MIN_SAMPLES = 30;      // Fewer positions in a stage give no check
+
+    /**
+     * Valid arguments: file games [maxDepth] [size] [threads]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2) {
+            System.err.println("Usage: java ProbCutCalibrator file games [maxDepth] [size] [threads]");
+            System.err.println("\tfile\t\t - The parameters file to write.");
+            System.err.println("\tgames\t\t - Number of self-play games.");
+            System.err.println("\tmaxDepth\t - Deepest search fitted. Defaults to 8.");
+            System.err.println("\tsize\t\t - Board size of the games. Defaults to 8.");
+            System.err.println("\tthreads\t\t - Defaults to the number of processors.");
+            System.exit(1);
+        }
+        File file = new File(args[0]);
+        int games = Integer.parseInt(args[1]);
+        int maxDepth = args.length >= 3 ? Integer.parseInt(args[2]) : 8;
+        int size = args.length >= 4 ? Integer.parseInt(args[3]) : 8;
+        int threads = args.length >= 5 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        Fit[][][] fits = calibrate(games, maxDepth, size, threads);
+        ProbCut probCut = new ProbCut(size);
+        System.out.println("stage\tdepth\tshallow\tpositions\ta\tb\tsigma");
+        for (int stage = 0; stage < ProbCut.STAGES; stage++) {
+            for (int depth = 3; depth <= maxDepth; depth++) {
+                for (int shallow = depth - 4; shallow < depth; shallow += 2) {
+                    if (shallow < 1) continue;
+                    Fit fit = fits[stage][depth][shallow];
+                    if (fit.n < MIN_SAMPLES || fit.a() <= 0) continue;
+                    probCut.set(stage, depth, shallow, fit.a(), fit.b(), fit.sigma());
+                    System.out.printf("%d\t%d\t%d\t%d\t%.3f\t%.4f\t%.4f%n", stage, depth, shallow, fit.n, fit.a(), fit.b(), fit.sigma());
+                }
+            }
+        }
+        probCut.write(file);
+        System.out.println("Wrote " + file);
+        System.exit(0);
+    }
+
+    /**
+     * Least squares fit of y = a*x + b
+     */
+    static class Fit {
+        long n;
+        double sx, sy, sxx, sxy, syy;
+
+        void add(double x, double y) {
+            n++;
+            sx += x;
+            sy += y;
+            sxx += x * x;
+            sxy += x * y;
+            syy += y * y;
+        }
+
+        void add(Fit other) {
+            n += other.n;
+            sx += other.sx;
+            sy += other.sy;
+            sxx += other.sxx;
+            sxy += other.sxy;
+            syy += other.syy;
+        }
+
+        double a() {
+            double variance = n * sxx - sx * sx;
+            return variance == 0 ? 0 : (n * sxy - sx * sy) / variance;
+        }
+
+        double b() {
+            return (sy - a() * sx) / n;
+        }
+
+        // Standard deviation of the residuals y - (a*x + b)
+        double sigma() {
+            double a = a();
+            double b = b();
+            double squares = syy - 2 * a * sxy - 2 * b * sy + a * a * sxx + 2 * a * b * sx + n * b * b;
+            return Math.sqrt(Math.max(0, squares) / n);
+        }
+    }
+
+    /**
+     * Plays the games on the given number of threads and returns the fits [stage][depth][shallow] of the
+     * values of all their positions.
+     */
+    public static Fit[][][] calibrate(int games, int maxDepth, int size, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<Fit[][][]>> results = new ArrayList<Future<Fit[][][]>>();
+            for (int t = 0; t < threads; t++) {
+                int threadGames = games / threads + (t < games % threads ? 1 : 0);
+                Random random = new Random(System.nanoTime() ^ t);
+                results.add(pool.submit(() -> playGames(threadGames, maxDepth, size, random)));
+            }
+            Fit[][][] fits = newFits(maxDepth);
+            for (Future<Fit[][][]> result : results) {
+                Fit[][][] part = result.get();
+                for (int stage = 0; stage < ProbCut.STAGES; stage++)
+                    for (int depth = 0; depth <= maxDepth; depth++)
+                        for (int shallow = 0; shallow <= maxDepth; shallow++)
+                            fits[stage][depth][shallow].add(part[stage][depth][shallow]);
+            }
+            return fits;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static Fit[][][] newFits(int maxDepth) {
+        Fit[][][] fits = new Fit[ProbCut.STAGES][maxDepth + 1][maxDepth + 1];
+        for (Fit[][] byDepth : fits)
+            for (Fit[] byShallow : byDepth)
+                for (int i = 0; i < byShallow.length; i++) byShallow[i] = new Fit();
+        return fits;
+    }
+
+    private static Fit[][][] playGames(int games, int maxDepth, int size, Random random) {
+        Fit[][][] fits = newFits(maxDepth);
+        BetterAI player = fullWidth(new BetterAI(0, 4, 1, false));
+        BetterAI searcher = fullWidth(new BetterAI(0, maxDepth, 1, false,
+                new TranspositionTable(18, TranspositionTable.Replacement.DEPTH_PREFERRED)));
+        double[] values = new double[maxDepth + 1];
+        for (int g = 0; g < games; g++) {
+            GameState s = GameState.newGame(size, 1);
+            int randomPlies = 4 + random.nextInt(8);
+            for (int ply = 0; !s.isFinished(); ply++) {
+                if (!s.hasLegalMove()) {
+                    s.changePlayer();
+                    continue;
+                }
+                int[] tokens = s.countTokens();
+                int stage = ProbCut.stage(tokens[0] + tokens[1], size);
+                for (int depth = 1; depth <= maxDepth; depth++) {
+                    searcher.getTranspositionTable().clear();
+                    values[depth] = searcher.searchValue(s, depth);
+                }
+                for (int depth = 3; depth <= maxDepth; depth++)
+                    for (int shallow = depth - 4; shallow < depth; shallow += 2)
+                        if (shallow >= 1) fits[stage][depth][shallow].add(values[shallow], values[depth]);
+
+                ArrayList<Position> moves = s.legalMoves();
+                s.insertToken(ply < randomPlies ? moves.get(random.nextInt(moves.size())) : player.decideMove(s));
+            }
+        }
+        return fits;
+    }
+
+    // The AI searching full width, without book, solver, pondering or output
+    private static BetterAI fullWidth(BetterAI ai) {
+        ai.setSelective(false);
+        ai.setOpeningBook(null);
+        ai.setEndgameEmpties(0);
+        ai.setPondering(false);
+        ai.setVerbose(false);
+        return ai;
+    }
+}
@@ -0,0 +1,196 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters of the search of {@link BetterAI}: nodes, evaluations at the horizon, transposition table probes,
+ * hits and cutoffs, cutoffs by the index of the move that caused them, selective search cutoffs and
+ * reductions, the deepest ply reached, and the time taken.
+ *
+ * Every searching thread counts in its own object, by incrementing the fields directly without any
+ * synchronization, so counting costs next to nothing even in parallel search. The objects of the worker
+ * threads are added to that of the calling thread with add when their part of the search is done. All
+ * methods are synchronized, so a finished object can be read from other threads, e.g. through JMX with
+ * register, until unregister.
+ */
+public class SearchStats implements SearchStatsMXBean {
+    public static final int CUTOFF_INDICES = 8;     // Cutoffs by the 8th or a later move are counted together
+
+    // Counted directly by the searching thread
+    long searches;          // Calls to decideMove added up in this object
+    long nodes;
+    long leafEvaluations;   // Calls to the evaluation function
+    long expandedNodes;     // Nodes where moves were searched
+    long firstBest;         // Expanded nodes where the first move searched was the best
+    final long[] cutoffs = new long[CUTOFF_INDICES];
+    long tableProbes;
+    long tableHits;
+    long tableCutoffs;      // Nodes cut off by the score in the transposition table
+    long probCuts;          // Nodes cut off by Multi-ProbCut
+    long reductions;        // Moves first searched less deep by late move reductions
+    int maxDepth;           // Deepest ply searched, passes included
+    long elapsedNanos;
+
+    private ObjectName objectName;  // The name the object is registered with as an MBean, or null
+
+    /**
+     * Counts a node where the index'th move searched was the best, and caused a cutoff if cutoff is true.
+     */
+    void expanded(int index, boolean cutoff) {
+        expandedNodes++;
+        if (index == 0) firstBest++;
+        if (cutoff) cutoffs[Math.min(index, CUTOFF_INDICES - 1)]++;
+    }
+
+    public synchronized void reset() {
+        searches = nodes = leafEvaluations = expandedNodes = firstBest = 0;
+        tableProbes = tableHits = tableCutoffs = elapsedNanos = 0;
+        probCuts = reductions = 0;
+        java.util.Arrays.fill(cutoffs, 0);
+        maxDepth = 0;
+    }
+
+    /**
+     * Adds the counters of other to these. The deepest ply is the deeper of the two.
+     */
+    public synchronized void add(SearchStats other) {
+        synchronized (other) {
+            searches += other.searches;
+            nodes += other.nodes;
+            leafEvaluations += other.leafEvaluations;
+            expandedNodes += other.expandedNodes;
+            firstBest += other.firstBest;
+            for (int i = 0; i < CUTOFF_INDICES; i++) cutoffs[i] += other.cutoffs[i];
+            tableProbes += other.tableProbes;
+            tableHits += other.tableHits;
+            tableCutoffs += other.tableCutoffs;
+            probCuts += other.probCuts;
+            reductions += other.reductions;
+            maxDepth = Math.max(maxDepth, other.maxDepth);
+            elapsedNanos += other.elapsedNanos;
+        }
+    }
+
+    /**
+     * Replaces the counters with those of other.
+     */
+    public synchronized void set(SearchStats other) {
+        reset();
+        add(other);
+    }
+
+    /**
+     * Makes the object readable through the platform MBean server as BetterAI:type=SearchStats,name=name.
+     * Returns false if that name is taken, the object is already registered or JMX is not available.
+     */
+    public synchronized boolean register(String name) {
+        if (objectName != null) return false;
+        try {
+            ObjectName objectName = new ObjectName("BetterAI:type=SearchStats,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+            return true;
+        } catch (JMException | SecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the object from the platform MBean server, if register added it there.
+     */
+    public synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException | SecurityException e) {
+            // Already gone
+        }
+        objectName = null;
+    }
+
+    public synchronized long getSearches() {
+        return searches;
+    }
+
+    public synchronized long getNodes() {
+        return nodes;
+    }
+
+    public synchronized long getLeafEvaluations() {
+        return leafEvaluations;
+    }
+
+    public synchronized long getTableProbes() {
+        return tableProbes;
+    }
+
+    public synchronized long getTableHits() {
+        return tableHits;
+    }
+
+    public synchronized long getTableCutoffs() {
+        return tableCutoffs;
+    }
+
+    public synchronized long getProbCuts() {
+        return probCuts;
+    }
+
+    public synchronized long getReductions() {
+        return reductions;
+    }
+
+    /**
+     * Returns the number of cutoffs caused by the first, second, ... move searched at a node; the last element
+     * counts those by the CUTOFF_INDICES'th or a later move.
+     */
+    public synchronized long[] getCutoffsByMoveIndex() {
+        return cutoffs.clone();
+    }
+
+    /**
+     * Returns the fraction of the cutoffs that were caused by the first move searched.
+     */
+    public synchronized double getFirstMoveCutoffRate() {
+        long total = 0;
+        for (long c : cutoffs) total += c;
+        return total == 0 ? 0 : (double) cutoffs[0] / total;
+    }
+
+    /**
+     * Returns the fraction of the nodes with moves where the first move searched was the best.
+     */
+    public synchronized double getFirstMoveBestRate() {
+        return expandedNodes == 0 ? 0 : (double) firstBest / expandedNodes;
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public synchronized long getElapsedMillis() {
+        return elapsedNanos / 1000000;
+    }
+
+    public synchronized long getNodesPerSecond() {
+        return elapsedNanos == 0 ? 0 : nodes * 1000000000 / elapsedNanos;
+    }
+
+    public synchronized String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append("Searched ").append(nodes).append(" nodes in ").append(getElapsedMillis()).append(" ms (")
+         .append(getNodesPerSecond()).append(" nodes/s) to ply ").append(maxDepth).append(", ")
+         .append(leafEvaluations).append(" evaluations\n");
+        s.append("Transposition table: ").append(tableHits).append(" hits in ").append(tableProbes)
+         .append(" probes (").append(tableProbes == 0 ? 0 : Math.round(100.0 * tableHits / tableProbes))
+         .append("%), ").append(tableCutoffs).append(" cutoffs\n");
+        if (probCuts > 0 || reductions > 0)
+            s.append("Selective search: ").append(probCuts).append(" ProbCut cutoffs, ").append(reductions)
+             .append(" reduced moves\n");
+        s.append("Move ordering: first move best at ").append(Math.round(100 * getFirstMoveBestRate()))
+         .append("% of the nodes; cutoffs by move");
+        for (int i = 0; i < CUTOFF_INDICES; i++)
+            s.append(i == 0 ? " " : "/").append(cutoffs[i]);
+        return s.toString();
+    }
+}
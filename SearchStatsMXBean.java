@@ -0,0 +1,36 @@
+/**
+ * The counters of {@link SearchStats} as seen through JMX, e.g. in JConsole or VisualVM under the domain
+ * BetterAI.
+ */
+public interface SearchStatsMXBean {
+
+    long getSearches();
+
+    long getNodes();
+
+    long getLeafEvaluations();
+
+    long getTableProbes();
+
+    long getTableHits();
+
+    long getTableCutoffs();
+
+    long getProbCuts();
+
+    long getReductions();
+
+    long[] getCutoffsByMoveIndex();
+
+    double getFirstMoveCutoffRate();
+
+    double getFirstMoveBestRate();
+
+    int getMaxDepth();
+
+    long getElapsedMillis();
+
+    long getNodesPerSecond();
+
+    void reset();
+}
@@ -0,0 +1,374 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks of the game engines that are too tedious to do by hand after every change: run with
+ * <pre>
+ * java SelfTest
+ * </pre>
+ * Every failed check is printed, and the exit code is 1 if any failed, so the run can stop a script or a
+ * build. The checks only take a few seconds.
+ *
+ * Perft counts of the 8x8 start position are compared with the reference counts for the bitboard engine, the
+ * wide engine and the array engine, and on other sizes the wide engine is compared with the array engine. In
+ * random games played on all engines at once, the engines must agree on every state, and making and taking
+ * back every legal move must restore the state and its Zobrist hash. An opening book written from random
+ * positions must give the stored move and score of every position in every symmetry, and states of every size
+ * must have the same canonical form in every symmetry. Game records of random games must come back the same
+ * from the binary file and from the text transcript, and replay to the final state; a file cut short must be
+ * reported. ProbCut parameters must come back the same from their file, which must hold the board size. A
+ * tournament openings file must give its openings in order and name the line of an illegal one.
+ */
+public class SelfTest
+{
+    private static int checks;
+    private static int failures;
+
+    public static void main(String[] args) throws Exception
+    {
+        checkPerft();
+        checkEngines();
+        checkBook();
+        checkSymmetry();
+        checkRecords();
+        checkProbCut();
+        checkOpenings();
+        System.out.println(checks + " checks, " + failures + " failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            failures++;
+            System.out.println("FAILED: " + what);
+        }
+    }
+
+    // The three engines of a board of the given size, the array engine first; only the 8x8 board has a bitboard
+    private static ArrayList<GameState> engines(int size) {
+        ArrayList<GameState> engines = new ArrayList<GameState>();
+        engines.add(new GameState(size, 1));
+        engines.add(new WideBoardState(size, 1));
+        if (size == 8) engines.add(new BitBoardState(1));
+        return engines;
+    }
+
+    private static String name(GameState s) {
+        return s.getClass().getName() + " " + s.getSize() + "x" + s.getSize();
+    }
+
+    // Every engine gets its own Perft, as the cached subtree counts of one would answer for the others
+    private static void checkPerft() throws Exception {
+        for (GameState start : engines(8)) {
+            Perft perft = new Perft(16, 1);
+            for (int depth = 1; depth <= 8; depth++) {
+                long leaves = perft.count(start, depth);
+                check(leaves == Perft.REFERENCE[depth], "perft " + depth + " of " + name(start) + ": " + leaves
+                        + ", expected " + Perft.REFERENCE[depth]);
+            }
+        }
+        for (int size : new int[]{4, 6, 10, 16}) {
+            ArrayList<GameState> engines = engines(size);
+            for (int depth = 1; depth <= 6; depth++) {
+                long expected = new Perft(16, 1).count(engines.get(0), depth);
+                long leaves = new Perft(16, 1).count(engines.get(1), depth);
+                check(leaves == expected, "perft " + depth + " of " + name(engines.get(1)) + ": " + leaves
+                        + ", array engine " + expected);
+            }
+        }
+    }
+
+    private static void checkEngines() {
+        Random random = new Random(1);
+        for (int size : new int[]{6, 8, 10, 16}) {
+            for (int game = 0; game < 10; game++) {
+                ArrayList<GameState> engines = engines(size);
+                GameState reference = engines.get(0);
+                for (int ply = 0; !reference.isFinished(); ply++) {
+                    String where = "game " + game + " ply " + ply + " of ";
+                    for (GameState s : engines) checkSame(reference, s, where + name(s));
+                    ArrayList<Position> moves = reference.legalMoves();
+                    for (GameState s : engines) checkMakeUnmake(s, where + name(s));
+                    if (moves.isEmpty()) {
+                        for (GameState s : engines) s.changePlayer();
+                        continue;
+                    }
+                    Position move = moves.get(random.nextInt(moves.size()));
+                    for (GameState s : engines) check(s.insertToken(move), where + name(s) + ": " + move + " not inserted");
+                }
+                for (GameState s : engines) checkSame(reference, s, "end of game " + game + " of " + name(s));
+            }
+        }
+    }
+
+    // s must be the same state as reference, with a hash that matches its board
+    private static void checkSame(GameState reference, GameState s, String where) {
+        check(Arrays.deepEquals(s.getBoard(), reference.getBoard()), where + ": board differs");
+        check(s.getPlayerInTurn() == reference.getPlayerInTurn(), where + ": player in turn differs");
+        check(s.getHash() == reference.getHash(), where + ": hash differs");
+        check(s.getHash() == s.computeHash(), where + ": hash does not match the board");
+        ArrayList<Position> moves = s.legalMoves();
+        check(moves.equals(reference.legalMoves()), where + ": legal moves " + moves + ", expected " + reference.legalMoves());
+        MoveList list = new MoveList();
+        s.legalMoves(list);
+        check(list.toList(s.getSize()).equals(moves), where + ": legalMoves(MoveList) differs from legalMoves()");
+        check(s.hasLegalMove() == !moves.isEmpty(), where + ": hasLegalMove differs from legalMoves()");
+        check(s.isFinished() == reference.isFinished(), where + ": isFinished differs");
+        check(Arrays.equals(s.countTokens(), reference.countTokens()), where + ": countTokens differs");
+    }
+
+    // Makes and takes back every legal move of s, and a pass if there are none
+    private static void checkMakeUnmake(GameState s, String where) {
+        int[][] board = s.getBoard();
+        long hash = s.getHash();
+        int player = s.getPlayerInTurn();
+        ArrayList<Position> moves = s.legalMoves();
+        for (Position move : moves) {
+            long undo = s.makeMove(move);
+            check(undo != 0, where + ": legal move " + move + " not made");
+            check(s.getHash() == s.computeHash(), where + ": hash after " + move + " does not match the board");
+            s.unmakeMove(move, undo);
+            check(Arrays.deepEquals(s.getBoard(), board) && s.getHash() == hash && s.getPlayerInTurn() == player
+                    && s.legalMoves().equals(moves), where + ": unmaking " + move + " does not restore the state");
+        }
+        if (moves.isEmpty()) {
+            s.pass();
+            check(s.getHash() == s.computeHash(), where + ": hash after a pass does not match the board");
+            s.unpass();
+            check(s.getHash() == hash && s.getPlayerInTurn() == player, where + ": unpass does not restore the state");
+        }
+    }
+
+    // The state after the given number of random plies from the start, or fewer if the game ends
+    private static GameState randomState(GameState start, int plies, Random random) {
+        GameState s = start.copy();
+        for (int ply = 0; ply < plies && !s.isFinished(); ply++) {
+            ArrayList<Position> moves = s.legalMoves();
+            if (moves.isEmpty()) s.changePlayer();
+            else s.insertToken(moves.get(random.nextInt(moves.size())));
+        }
+        return s;
+    }
+
+    // The tokens of the player in turn and of the opponent
+    private static long[] ownOpp(BitBoardState s) {
+        return s.getPlayerInTurn() == 1 ? new long[]{s.getBlack(), s.getWhite()} : new long[]{s.getWhite(), s.getBlack()};
+    }
+
+    // A book of random positions without symmetries of their own, so that a move has one image in every symmetry
+    private static void checkBook() throws Exception {
+        Random random = new Random(2);
+        HashMap<Long, Integer> index = new HashMap<Long, Integer>();
+        ArrayList<BitBoardState> positions = new ArrayList<BitBoardState>();
+        long[] keys = new long[200];
+        int[] moves = new int[keys.length];
+        double[] scores = new double[keys.length];
+        while (positions.size() < keys.length) {
+            BitBoardState s = (BitBoardState) randomState(new BitBoardState(1), 4 + random.nextInt(12), random);
+            if (!s.hasLegalMove() || Symmetry.invariants(s) != 1) continue;
+            long[] t = ownOpp(s);
+            long key = OpeningBook.key(t[0], t[1]);
+            if (index.containsKey(key)) continue;
+            int i = positions.size();
+            index.put(key, i);
+            positions.add(s);
+            ArrayList<Position> legal = s.legalMoves();
+            Position move = legal.get(random.nextInt(legal.size()));
+            keys[i] = key;
+            moves[i] = OpeningBook.toCanonical(t[0], t[1], move.col * 8 + move.row);
+            scores[i] = (random.nextInt(20001) - 10000) / 10000.0;
+        }
+        File file = File.createTempFile("selftest", ".book");
+        try {
+            OpeningBook.write(file, keys, moves, scores, keys.length);
+            OpeningBook book = OpeningBook.open(file);
+            check(book.size() == keys.length, "book has " + book.size() + " positions, expected " + keys.length);
+            for (int i = 0; i < keys.length; i++) {
+                long[] t = ownOpp(positions.get(i));
+                int move = Symmetry.inversePlace(moves[i], Symmetry.canonical(t[0], t[1]));
+                for (int symmetry = 0; symmetry < Symmetry.COUNT; symmetry++) {
+                    long[] u = ownOpp((BitBoardState) Symmetry.transform(positions.get(i), symmetry));
+                    String where = "book position " + i + " in symmetry " + symmetry;
+                    check(OpeningBook.key(u[0], u[1]) == keys[i], where + ": key differs");
+                    check(book.lookup(u[0], u[1]) == Symmetry.transformPlace(move, symmetry), where + ": wrong move");
+                    int entry = book.indexOf(u[0], u[1]);
+                    check(entry >= 0 && book.getScore(entry) == scores[i], where + ": wrong score");
+                }
+            }
+            long[] start = ownOpp(new BitBoardState(1));
+            check(book.lookup(start[0], start[1]) == -1, "the start position is found in the book");
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void checkSymmetry() {
+        Random random = new Random(3);
+        for (int size : new int[]{6, 8, 10}) {
+            for (int symmetry = 0; symmetry < Symmetry.COUNT; symmetry++)
+                for (int place = 0; place < size * size; place++)
+                    check(Symmetry.inversePlace(Symmetry.transformPlace(place, symmetry, size), symmetry, size) == place,
+                            "place " + place + " of " + size + "x" + size + " does not come back from symmetry " + symmetry);
+            for (int i = 0; i < 50; i++) {
+                GameState s = randomState(GameState.newGame(size, 1), random.nextInt(size * size), random);
+                int[][] canonical = Symmetry.canonicalState(s).getBoard();
+                for (int symmetry = 0; symmetry < Symmetry.COUNT; symmetry++) {
+                    GameState t = Symmetry.transform(s, symmetry);
+                    String where = "position " + i + " of " + size + "x" + size + " in symmetry " + symmetry;
+                    check(t.getClass() == s.getClass(), where + ": transform changes the implementation");
+                    check(Arrays.deepEquals(Symmetry.canonicalState(t).getBoard(), canonical), where + ": canonical form differs");
+                }
+                if (size == 8) {
+                    GameState array = new GameState(s.getBoard(), s.getPlayerInTurn());
+                    check(Symmetry.canonical(array) == Symmetry.canonical(s), "position " + i
+                            + ": the array engine has another canonical symmetry than the bitboard");
+                }
+            }
+        }
+    }
+
+    // The records of the 16x16 games store their moves in two bytes each
+    private static void checkRecords() throws Exception {
+        Random random = new Random(4);
+        ArrayList<GameRecord> records = new ArrayList<GameRecord>();
+        ArrayList<int[][]> finalBoards = new ArrayList<int[][]>();
+        for (int size : new int[]{6, 8, 16}) {
+            for (int game = 0; game < 5; game++) {
+                GameState s = GameState.newGame(size, 1 + game % 2);
+                GameRecord record = new GameRecord(size, s.getPlayerInTurn(), game % 2 == 0 ? "one" : "two", "two");
+                while (!s.isFinished()) {
+                    ArrayList<Position> moves = s.legalMoves();
+                    if (moves.isEmpty()) {
+                        s.changePlayer();
+                        record.addPass();
+                    } else {
+                        Position move = moves.get(random.nextInt(moves.size()));
+                        s.insertToken(move);
+                        record.addMove(move);
+                    }
+                }
+                record.setResult(s);
+                records.add(record);
+                finalBoards.add(s.getBoard());
+            }
+        }
+        GameState forfeited = GameState.newGame(8, 1);                 // White then plays an illegal move
+        GameRecord forfeit = new GameRecord(8, 1, "one", "two");
+        Position first = forfeited.legalMoves().get(0);
+        forfeited.insertToken(first);
+        forfeit.addMove(first);
+        forfeit.setForfeit(2);
+        check(forfeit.getBlackTokens() == 64 && forfeit.getWhiteTokens() == 0, "forfeit result " + forfeit.toText());
+        records.add(forfeit);
+        finalBoards.add(forfeited.getBoard());
+        File file = File.createTempFile("selftest", ".ogr");
+        try {
+            try (GameRecordWriter writer = new GameRecordWriter(file, "one", "two")) {
+                for (GameRecord record : records) writer.write(record);
+            }
+            GameRecordReader reader = new GameRecordReader(file);
+            check(reader.getNames().equals(Arrays.asList("one", "two")), "record names " + reader.getNames());
+            for (int i = 0; i < records.size(); i++) {
+                GameRecord record = records.get(i);
+                String text = record.toText();
+                check(reader.next() && reader.toRecord().toText().equals(text), "record " + i + " read back differs: " + text);
+                check(GameRecord.fromText(text).toText().equals(text), "record " + i + " parsed back differs: " + text);
+                GameState end = record.replay(record.getMoveCount());
+                check(Arrays.deepEquals(end.getBoard(), finalBoards.get(i)) && end.isFinished() == (record != forfeit),
+                        "record " + i + " does not replay to its final state");
+            }
+            check(!reader.next(), "more records read than written");
+
+            try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(file, "rw")) {
+                raf.setLength(raf.length() - 1);    // The last move of the last game is cut off
+            }
+            reader = new GameRecordReader(file);
+            int read = 0;
+            String error = null;
+            try {
+                while (reader.next()) read++;
+            } catch (java.io.EOFException e) {
+                error = e.getMessage();
+            }
+            check(read == records.size() - 1 && error != null && error.contains("game " + read),
+                    "truncated record not reported: " + read + " games read, " + error);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void checkProbCut() throws Exception {
+        ProbCut probCut = new ProbCut(10);
+        probCut.set(0, 5, 3, 1.05, -0.01, 0.3);
+        probCut.set(0, 5, 1, 1.2, 0.02, 0.45);
+        probCut.set(3, 8, 4, 0.95, 0.0, 0.25);
+        probCut.set(3, 8, 4, 0.9, 0.001, 0.2);      // Replaces the one before
+        File file = File.createTempFile("selftest", ".probcut");
+        try {
+            probCut.write(file);
+            ProbCut read = ProbCut.load(file);
+            check(read.getSize() == 10, "ProbCut size " + read.getSize() + " read back, expected 10");
+            for (int stage = 0; stage < ProbCut.STAGES; stage++) {
+                for (int depth = 0; depth <= 10; depth++) {
+                    ProbCut.Cut[] expected = probCut.cuts(stage, depth);
+                    ProbCut.Cut[] cuts = read.cuts(stage, depth);
+                    boolean same = cuts.length == expected.length;
+                    for (int i = 0; same && i < cuts.length; i++)
+                        same = cuts[i].shallow == expected[i].shallow && cuts[i].a == expected[i].a
+                                && cuts[i].b == expected[i].b && cuts[i].sigma == expected[i].sigma;
+                    check(same, "ProbCut checks of stage " + stage + " depth " + depth + " differ when read back");
+                }
+            }
+            check(probCut.cuts(0, 5).length == 2 && probCut.cuts(0, 5)[0].shallow == 1, "ProbCut checks not sorted by shallow depth");
+            check(probCut.cuts(3, 8).length == 1 && probCut.cuts(3, 8)[0].a == 0.9, "a ProbCut check was not replaced");
+
+            try (PrintWriter out = new PrintWriter(file)) { // A file from before the size line
+                out.println("0 5 3 1.05 -0.01 0.3");
+            }
+            boolean rejected = false;
+            try {
+                ProbCut.load(file);
+            } catch (IOException e) {
+                rejected = true;
+            }
+            check(rejected, "a ProbCut file without the board size was loaded");
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void checkOpenings() throws Exception {
+        File file = File.createTempFile("selftest", ".openings");
+        try {
+            try (PrintWriter out = new PrintWriter(file)) {
+                out.println("# Openings");
+                out.println("d6c4");
+                out.println();
+                out.println("  e3  ");
+            }
+            ArrayList<Position[]> openings = Tournament.readOpenings(file, 8);
+            check(openings.size() == 2 && openings.get(0).length == 2 && openings.get(1).length == 1
+                    && openings.get(0)[1].col == 2 && openings.get(0)[1].row == 3, "openings read back differ");
+
+            try (PrintWriter out = new PrintWriter(file)) {
+                out.println("d6");
+                out.println("d6d6");
+            }
+            String error = null;
+            try {
+                Tournament.readOpenings(file, 8);
+            } catch (IllegalArgumentException e) {
+                error = e.getMessage();
+            }
+            check(error != null && error.startsWith("line 2:"), "illegal opening not reported on its line: " + error);
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * The 8 symmetries of a square board (the dihedral group: rotations and reflections). Symmetry number t
+ * first mirrors the columns if bit 0 of t is set, then mirrors the rows if bit 1 is set, and finally swaps
+ * columns and rows if bit 2 is set; symmetry 0 is the identity.
+ *
+ * On the 8x8 board the symmetries are applied to bitboards in the layout of {@link BitBoardState}, where the
+ * place (col, row) is bit col*8+row, with a few shifts and masks each. Game states of any size and
+ * implementation can be transformed, brought to a canonical form that is the same for all states that are
+ * symmetric to each other, and moves mapped between a state and its canonical form.
+ */
+public class Symmetry {
+    public static final int COUNT = 8;
+
+    private static final int[][] PLACE = new int[COUNT][64];      // The place each place is moved to
+    private static final int[][] INVERSE = new int[COUNT][64];    // The place each place comes from
+
+    static {
+        for (int t = 0; t < COUNT; t++) {
+            for (int sq = 0; sq < 64; sq++) {
+                int to = Long.numberOfTrailingZeros(transform(1L << sq, t));
+                PLACE[t][sq] = to;
+                INVERSE[t][to] = sq;
+            }
+        }
+    }
+
+    /**
+     * Returns the bitboard b transformed by the given symmetry.
+     */
+    public static long transform(long b, int symmetry) {
+        if ((symmetry & 1) != 0) b = mirrorColumns(b);
+        if ((symmetry & 2) != 0) b = mirrorRows(b);
+        if ((symmetry & 4) != 0) b = transpose(b);
+        return b;
+    }
+
+    /**
+     * Returns the index of the place the given place is moved to by the symmetry.
+     */
+    public static int transformPlace(int place, int symmetry) {
+        return PLACE[symmetry][place];
+    }
+
+    /**
+     * Returns the index of the place that the symmetry moves to the given place, i.e. undoes transformPlace.
+     */
+    public static int inversePlace(int place, int symmetry) {
+        return INVERSE[symmetry][place];
+    }
+
+    /**
+     * Returns the index col*size+row of the place the given place (index col*size+row) is moved to by the
+     * symmetry on a board of the given size.
+     */
+    public static int transformPlace(int place, int symmetry, int size) {
+        if (size == 8) return PLACE[symmetry][place];
+        int col = place / size;
+        int row = place % size;
+        if ((symmetry & 1) != 0) col = size - 1 - col;
+        if ((symmetry & 2) != 0) row = size - 1 - row;
+        return (symmetry & 4) != 0 ? row * size + col : col * size + row;
+    }
+
+    /**
+     * Returns the index of the place that the symmetry moves to the given place on a board of the given size.
+     */
+    public static int inversePlace(int place, int symmetry, int size) {
+        if (size == 8) return INVERSE[symmetry][place];
+        int col = place / size;
+        int row = place % size;
+        if ((symmetry & 4) != 0) {
+            int c = col;
+            col = row;
+            row = c;
+        }
+        if ((symmetry & 2) != 0) row = size - 1 - row;
+        if ((symmetry & 1) != 0) col = size - 1 - col;
+        return col * size + row;
+    }
+
+    /**
+     * Returns the place the given place is moved to by the symmetry on a board of the given size, e.g. to
+     * map a move in a state to the same move in the transformed state.
+     */
+    public static Position transform(Position place, int symmetry, int size) {
+        int p = transformPlace(place.col * size + place.row, symmetry, size);
+        return new Position(p / size, p % size);
+    }
+
+    /**
+     * Returns the place that the symmetry moves to the given place, e.g. to map a move in the transformed
+     * state back to the original state.
+     */
+    public static Position inverse(Position place, int symmetry, int size) {
+        int p = inversePlace(place.col * size + place.row, symmetry, size);
+        return new Position(p / size, p % size);
+    }
+
+    /**
+     * Returns a new state with the board of s transformed by the symmetry and the same player in turn, using
+     * the same implementation as s.
+     */
+    public static GameState transform(GameState s, int symmetry) {
+        if (s instanceof BitBoardState) {
+            BitBoardState b = (BitBoardState) s;
+            return new BitBoardState(transform(b.getBlack(), symmetry), transform(b.getWhite(), symmetry),
+                    s.getPlayerInTurn());
+        }
+        int size = s.getSize();
+        int[][] board = s.getBoard();
+        int[][] transformed = new int[size][size];
+        for (int col = 0; col < size; col++) {
+            for (int row = 0; row < size; row++) {
+                int p = transformPlace(col * size + row, symmetry, size);
+                transformed[p / size][p % size] = board[col][row];
+            }
+        }
+        if (s instanceof WideBoardState) return new WideBoardState(transformed, s.getPlayerInTurn());
+        return new GameState(transformed, s.getPlayerInTurn());
+    }
+
+    /**
+     * Returns the symmetry that transforms s to its canonical form: states that are symmetric to each other
+     * and have the same player in turn get the same canonical form. On the 8x8 board this is the same
+     * symmetry as canonical(own, opp) of the tokens of the player in turn and the opponent, whatever the
+     * implementation of s.
+     */
+    public static int canonical(GameState s) {
+        int size = s.getSize();
+        if (size == 8) {
+            long black;
+            long white;
+            if (s instanceof BitBoardState) {
+                black = ((BitBoardState) s).getBlack();
+                white = ((BitBoardState) s).getWhite();
+            } else {
+                long[] b = bitboards(s.getBoard());
+                black = b[0];
+                white = b[1];
+            }
+            return s.getPlayerInTurn() == 1 ? canonical(black, white) : canonical(white, black);
+        }
+        // The board read place by place in the transformed frame, which is smallest for the canonical form
+        int[][] board = s.getBoard();
+        int best = 0;
+        for (int t = 1; t < COUNT; t++) {
+            for (int p = 0; p < size * size; p++) {
+                int a = cell(board, inversePlace(p, t, size), size);
+                int b = cell(board, inversePlace(p, best, size), size);
+                if (a != b) {
+                    if (a < b) best = t;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the canonical form of s, transform(s, canonical(s)).
+     */
+    public static GameState canonicalState(GameState s) {
+        return transform(s, canonical(s));
+    }
+
+    /**
+     * Returns the symmetries that leave s unchanged, as a bit mask with bit t set for symmetry t. Bit 0, the
+     * identity, is always set; the start position of a game has the four symmetries that keep the diagonals.
+     */
+    public static int invariants(GameState s) {
+        int mask = 1;
+        int size = s.getSize();
+        if (s instanceof BitBoardState) {
+            long black = ((BitBoardState) s).getBlack();
+            long white = ((BitBoardState) s).getWhite();
+            for (int t = 1; t < COUNT; t++)
+                if (transform(black, t) == black && transform(white, t) == white) mask |= 1 << t;
+            return mask;
+        }
+        int[][] board = s.getBoard();
+        for (int t = 1; t < COUNT; t++) {
+            boolean same = true;
+            for (int p = 0; p < size * size && same; p++)
+                same = cell(board, p, size) == cell(board, transformPlace(p, t, size), size);
+            if (same) mask |= 1 << t;
+        }
+        return mask;
+    }
+
+    private static int cell(int[][] board, int place, int size) {
+        return board[place / size][place % size];
+    }
+
+    // The black and the white bitboard of an 8x8 board
+    private static long[] bitboards(int[][] board) {
+        long[] b = new long[2];
+        for (int col = 0; col < 8; col++)
+            for (int row = 0; row < 8; row++)
+                if (board[col][row] != 0) b[board[col][row] - 1] |= 1L << (col * 8 + row);
+        return b;
+    }
+
+    /**
+     * Returns the symmetry that gives the smallest pair (own, opp), comparing own first. Equal positions
+     * get equal canonical forms, whichever symmetry they are seen in.
+     */
+    public static int canonical(long own, long opp) {
+        int best = 0;
+        long bestOwn = own;
+        long bestOpp = opp;
+        for (int t = 1; t < COUNT; t++) {
+            long o = transform(own, t);
+            if (o > bestOwn) continue;
+            long p = transform(opp, t);
+            if (o < bestOwn || p < bestOpp) {
+                best = t;
+                bestOwn = o;
+                bestOpp = p;
+            }
+        }
+        return best;
+    }
+
+    // col -> 7-col: the columns are the bytes of the bitboard
+    static long mirrorColumns(long b) {
+        return Long.reverseBytes(b);
+    }
+
+    // row -> 7-row: the bits within every byte are reversed
+    static long mirrorRows(long b) {
+        b = ((b >>> 1) & 0x5555555555555555L) | ((b & 0x5555555555555555L) << 1);
+        b = ((b >>> 2) & 0x3333333333333333L) | ((b & 0x3333333333333333L) << 2);
+        b = ((b >>> 4) & 0x0F0F0F0F0F0F0F0FL) | ((b & 0x0F0F0F0F0F0F0F0FL) << 4);
+        return b;
+    }
+
+    // (col, row) -> (row, col)
+    static long transpose(long b) {
+        long t = 0x0F0F0F0F00000000L & (b ^ (b << 28));
+        b ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (b ^ (b << 14));
+        b ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (b ^ (b << 7));
+        b ^= t ^ (t >>> 7);
+        return b;
+    }
+}
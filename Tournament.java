@@ -0,0 +1,392 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays a match between two AIs without a GUI. The games are played in parallel on a pool of worker threads,
+ * each with its own instances of the two AIs. The openings are either random plies from the start position
+ * or read from a file of move sequences (see {@link #readOpenings}). Every opening is played twice, with
+ * each AI playing black once. When all games are done the number of wins, draws and losses of the first AI,
+ * its Elo difference to the second AI with a 95% confidence interval and the average time per move of each
+ * AI are printed. If the system property othello.record names a file, all games are written to it as
+ * game records (see {@link GameRecordWriter}).
+ */
+public class Tournament
+{
+    /**
+     * Valid arguments: [--tt-bits n] [--openings file] ai1 ai2 [games] [size] [openingPlies] [threads]
+     * Defaults to 100 games on a board of size 8, openings of 4 random plies from the start position and
+     * one thread per available processor. With an openings file the default is every opening played with
+     * both colours, and openingPlies is not used.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        ArrayList<String> positional = new ArrayList<String>();
+        String openingsFile = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--tt-bits") && i + 1 < args.length) {
+                    int bits = Integer.parseInt(args[++i]);
+                    if (bits < 1 || bits > 30) {
+                        printHelp("The transposition table bits should be between 1 and 30");
+                        System.exit(1);
+                    }
+                    // The AIs are created by class name, so the size reaches them as their system property
+                    System.setProperty("betterai.tt.bits", Integer.toString(bits));
+                } else if (args[i].equals("--openings") && i + 1 < args.length) {
+                    openingsFile = args[++i];
+                } else if (args[i].startsWith("--")) {
+                    printHelp("Unknown option " + args[i]);
+                    System.exit(1);
+                } else {
+                    positional.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+        args = positional.toArray(new String[positional.size()]);
+        if (args.length < 2) {
+            printHelp("You need to supply at least two arguments");
+            System.exit(1);
+        }
+        int games = 100;
+        int size = 8;
+        int openingPlies = 4;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            if (args.length >= 3) games = Integer.parseInt(args[2]);
+            if (args.length >= 4) size = Integer.parseInt(args[3]);
+            if (args.length >= 5) openingPlies = Integer.parseInt(args[4]);
+            if (args.length >= 6) threads = Integer.parseInt(args[5]);
+        } catch (NumberFormatException nfe) {
+            printHelp("Could not parse number: " + nfe.getMessage());
+            System.exit(1);
+        }
+        if (games <= 0) {
+            printHelp("The number of games should be positive");
+            System.exit(1);
+        }
+        if (size < 4 || size % 2 != 0) {
+            printHelp("Board size should be an even number greater than 2");
+            System.exit(1);
+        }
+        if (openingPlies < 0 || openingPlies >= size * size - 4) {
+            printHelp("An opening should have fewer plies than the " + (size * size - 4) + " empty places of the board");
+            System.exit(1);
+        }
+        if (threads <= 0) {
+            printHelp("The number of threads should be positive");
+            System.exit(1);
+        }
+        // Fail before starting the workers if a class cannot be instantiated
+        if (Othello.parseGameLogicParam(args[0]) == null || Othello.parseGameLogicParam(args[1]) == null) {
+            printHelp("Both players must be AIs");
+            System.exit(1);
+        }
+
+        Tournament tournament = new Tournament(args[0], args[1], size, openingPlies, threads);
+        if (openingsFile != null) {
+            try {
+                tournament.setOpenings(readOpenings(new File(openingsFile), size));
+            } catch (IOException | IllegalArgumentException e) {
+                printHelp(openingsFile + ": " + e.getMessage());
+                System.exit(1);
+            }
+            if (args.length < 3) games = 2 * tournament.openings.size();
+        }
+        String recordFile = System.getProperty("othello.record");
+        if (recordFile != null)
+            tournament.setRecordWriter(new GameRecordWriter(new File(recordFile), args[0], args[1]));
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() { // The AIs' own output is not wanted here
+            public void write(int b) {}
+        }));
+        long start = System.nanoTime();
+        try {
+            tournament.play(games);
+        } catch (IllegalArgumentException e) { // No openings of the given length
+            System.setOut(out);
+            printHelp(e.getMessage());
+            System.exit(1);
+        } finally {
+            System.setOut(out);
+            if (tournament.recordWriter != null) tournament.recordWriter.close();
+        }
+        tournament.printResults(out, System.nanoTime() - start);
+        System.exit(0);
+    }
+
+    /**
+     * Printing error and help-message
+     */
+    public static void printHelp(String errMsg) {
+        if (!errMsg.equals("")) {
+            System.err.println(errMsg);
+        }
+        System.err.println("Usage: java Tournament [--tt-bits n] [--openings file] OthelloAI1 OthelloAI2 [games] [size]"
+                + " [openingPlies] [threads]");
+        System.err.println("\t--tt-bits n\t - Transposition table of 2^n entries (24 bytes each) for each BetterAI. Every thread");
+        System.err.println("\t\t\t   has its own pair of AIs, so the tables take threads * 2 * 24 * 2^n bytes. Defaults to 20.");
+        System.err.println("\t--openings file\t - One opening per line as moves from the start position (f5d6c3..., -- for a pass).");
+        System.err.println("\t\t\t   Each is played with both colours. Lines starting with # are skipped.");
+        System.err.println("\tOthelloAI1, OthelloAI2\t - OthelloAI classes implementing IOthelloAI.");
+        System.err.println("\tgames\t\t - Number of games to play. Defaults to 100, or twice the number of openings read.");
+        System.err.println("\tsize\t\t - Must be an even integer greater or equal to 4. Defaults to 8.");
+        System.err.println("\topeningPlies\t - Number of random plies from the start position in each opening. Defaults to 4.");
+        System.err.println("\tthreads\t\t - Number of games played at the same time. Defaults to the number of processors.");
+    }
+
+    /** Outcome of a single game */
+    static class GameResult {
+        double score;           // 1 if the first AI won, 0.5 for a draw, 0 if it lost
+        long[] moveNanos = new long[2];
+        int[] moves = new int[2];
+    }
+
+    private final String ai1;
+    private final String ai2;
+    private final int size;
+    private final int openingPlies;
+    private final ExecutorService pool;
+    private final ThreadLocal<IOthelloAI[]> players;    // The AIs of each worker: first AI, second AI
+    private final List<IOthelloAI> created = Collections.synchronizedList(new ArrayList<IOthelloAI>());  // Closed by play
+    private final ArrayList<GameResult> results = new ArrayList<GameResult>();
+    private GameRecordWriter recordWriter;              // Where the games are recorded, or null
+    private List<Position[]> openings;                  // The openings to play, or null for random ones
+
+    public Tournament(String ai1, String ai2, int size, int openingPlies, int threads) {
+        this.ai1 = ai1;
+        this.ai2 = ai2;
+        this.size = size;
+        this.openingPlies = openingPlies;
+        pool = Executors.newFixedThreadPool(threads);
+        players = ThreadLocal.withInitial(() -> {
+            try {
+                IOthelloAI[] ais = {Othello.parseGameLogicParam(this.ai1), Othello.parseGameLogicParam(this.ai2)};
+                created.add(ais[0]);
+                created.add(ais[1]);
+                return ais;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    /**
+     * Records all games played from now on with the given writer.
+     */
+    public void setRecordWriter(GameRecordWriter recordWriter) {
+        this.recordWriter = recordWriter;
+    }
+
+    /**
+     * Plays the given openings instead of random ones. A null place in an opening is a pass.
+     */
+    public void setOpenings(List<Position[]> openings) {
+        this.openings = openings;
+    }
+
+    /**
+     * Plays the given number of games and waits for all of them to finish. The openings are played in order,
+     * each twice in a row with the colours swapped, and from the start again when more games are asked for
+     * than there are openings. The workers and their AIs are closed afterwards, so a tournament plays only
+     * once.
+     */
+    public void play(int games) throws InterruptedException, ExecutionException {
+        List<Position[]> openings = this.openings != null ? this.openings
+                                                          : randomOpenings((games + 1) / 2, new Random(1));
+        ArrayList<Future<GameResult>> futures = new ArrayList<Future<GameResult>>();
+        try {
+            for (int i = 0; i < games; i++) {
+                Position[] opening = openings.get(i / 2 % openings.size());
+                boolean firstIsBlack = i % 2 == 0;
+                futures.add(pool.submit(() -> playGame(opening, firstIsBlack)));
+            }
+            for (Future<GameResult> future : futures)
+                results.add(future.get());
+        } finally {
+            pool.shutdownNow();
+            if (pool.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES))
+                for (IOthelloAI ai : created) ai.close();
+        }
+    }
+
+    /**
+     * Writes the record of a finished game, if the games are being recorded.
+     */
+    private void write(GameRecord record) {
+        if (recordWriter == null) return;
+        try {
+            recordWriter.write(record);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Plays one game from the given opening between the AIs of the calling worker thread. An AI that chooses
+     * an illegal move loses the game.
+     */
+    GameResult playGame(Position[] opening, boolean firstIsBlack) {
+        IOthelloAI[] ais = players.get();
+        GameResult result = new GameResult();
+        GameState state = GameState.newGame(size, 1);
+        GameRecord record = new GameRecord(size, 1, firstIsBlack ? ai1 : ai2, firstIsBlack ? ai2 : ai1);
+        for (Position move : opening) {
+            if (move == null) {
+                state.changePlayer();
+                record.addPass();
+            } else {
+                state.insertToken(move);
+                record.addMove(move);
+            }
+        }
+
+        while (!state.isFinished()) {
+            if (!state.hasLegalMove()) {
+                state.changePlayer();
+                record.addPass();
+                continue;
+            }
+            int player = state.getPlayerInTurn();
+            int ai = (player == 1) == firstIsBlack ? 0 : 1;
+            long start = System.nanoTime();
+            Position move = ais[ai].decideMove(state.copy());
+            result.moveNanos[ai] += System.nanoTime() - start;
+            result.moves[ai]++;
+            if (move == null || !state.insertToken(move)) {
+                record.setForfeit(player);
+                write(record);
+                result.score = ai == 0 ? 0 : 1;
+                return result;
+            }
+            record.addMove(move);
+        }
+        record.setResult(state);
+        write(record);
+        int[] tokens = state.countTokens();
+        int first = firstIsBlack ? tokens[0] : tokens[1];
+        int second = firstIsBlack ? tokens[1] : tokens[0];
+        result.score = first > second ? 1 : first < second ? 0 : 0.5;
+        return result;
+    }
+
+    /**
+     * Returns openings of random legal moves from the start position that do not end the game. Throws
+     * IllegalArgumentException if too few of the random games last long enough.
+     */
+    ArrayList<Position[]> randomOpenings(int count, Random random) {
+        ArrayList<Position[]> openings = new ArrayList<Position[]>();
+        for (int attempts = 0; openings.size() < count; attempts++) {
+            if (attempts == 100 * count + 1000)
+                throw new IllegalArgumentException("Too few random games last " + openingPlies + " plies on the "
+                        + size + "x" + size + " board; use shorter openings");
+            GameState state = GameState.newGame(size, 1);
+            Position[] opening = new Position[openingPlies];
+            int i = 0;
+            while (i < openingPlies && state.hasLegalMove()) {
+                ArrayList<Position> moves = state.legalMoves();
+                opening[i] = moves.get(random.nextInt(moves.size()));
+                state.insertToken(opening[i++]);
+            }
+            if (i == openingPlies && !state.isFinished())
+                openings.add(opening);
+        }
+        return openings;
+    }
+
+    /**
+     * Reads a file of openings for the given board size. Each line holds the moves of one opening from the
+     * start position with black to move, in the notation of the game transcripts (f5d6c3..., "--" for a
+     * pass; see {@link GameRecord}). Blank lines and lines starting with # are skipped. Every opening must
+     * be legal and leave the game unfinished; a pass becomes a null place.
+     */
+    static ArrayList<Position[]> readOpenings(File file, int size) throws IOException {
+        ArrayList<Position[]> openings = new ArrayList<Position[]>();
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            int lineNumber = 0;
+            for (String line; (line = in.readLine()) != null; ) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    GameRecord record = new GameRecord(size, 1, "", "");
+                    record.addMoves(line);
+                    GameState state = GameState.newGame(size, 1);
+                    Position[] opening = new Position[record.getMoveCount()];
+                    for (int i = 0; i < opening.length; i++) {
+                        int move = record.getMove(i);
+                        if (move == GameRecord.PASS) {
+                            if (state.hasLegalMove())
+                                throw new IllegalArgumentException("pass with a legal move at ply " + (i + 1));
+                            state.changePlayer();
+                        } else {
+                            opening[i] = new Position(move / size, move % size);
+                            if (!state.insertToken(opening[i]))
+                                throw new IllegalArgumentException("illegal move at ply " + (i + 1));
+                        }
+                    }
+                    if (state.isFinished()) throw new IllegalArgumentException("the game is already over");
+                    openings.add(opening);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+        }
+        if (openings.isEmpty()) throw new IllegalArgumentException("no openings");
+        return openings;
+    }
+
+    /**
+     * Prints the results of the games played so far.
+     */
+    public void printResults(PrintStream out, long nanos) {
+        int wins = 0, draws = 0, losses = 0;
+        long[] moveNanos = new long[2];
+        long[] moves = new long[2];
+        for (GameResult r : results) {
+            if (r.score == 1) wins++;
+            else if (r.score == 0) losses++;
+            else draws++;
+            for (int i = 0; i < 2; i++) {
+                moveNanos[i] += r.moveNanos[i];
+                moves[i] += r.moves[i];
+            }
+        }
+        int n = results.size();
+        double score = (wins + 0.5 * draws) / n;
+        double variance = (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + losses * Math.pow(score, 2)) / n;
+        double margin = 1.96 * Math.sqrt(variance / n);
+
+        out.println(ai1 + " vs " + ai2 + ": " + n + " games on a " + size + "x" + size + " board in "
+                + nanos / 1000000 + " ms");
+        out.println("Wins/draws/losses of " + ai1 + ": " + wins + "/" + draws + "/" + losses);
+        out.println(String.format("Elo difference: %.1f (95%% confidence interval %.1f to %.1f)",
+                elo(score), elo(score - margin), elo(score + margin)));
+        out.println(String.format("Average time per move: %s %.2f ms, %s %.2f ms",
+                ai1, moves[0] == 0 ? 0 : moveNanos[0] / 1e6 / moves[0], ai2, moves[1] == 0 ? 0 : moveNanos[1] / 1e6 / moves[1]));
+    }
+
+    /**
+     * Returns the Elo difference corresponding to the expected score, clamped to +-1000.
+     */
+    static double elo(double score) {
+        if (score <= 0) return -1000;
+        if (score >= 1) return 1000;
+        return Math.max(-1000, Math.min(1000, -400 * Math.log10(1 / score - 1)));
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Fixed-size hash table of search results, indexed by the Zobrist hash of a game state
+ * (see {@link GameState#getHash()}). For every state it stores the remaining depth the state was searched
+ * to, whether the score is exact or a bound, the score and the best move found.
+ *
+ * The table is kept in three primitive arrays, so it allocates nothing after construction. The key array
+ * holds the hash xor'ed with the two data words, which lets a probe detect an entry that was torn by a
+ * concurrent store: such an entry simply does not match. The table is shared by all threads of a search, so it
+ * keeps no counters of its own; the searches count their probes and hits in {@link SearchStats}.
+ */
+public class TranspositionTable {
+
+    public static final int EXACT = 0;  // The score is the exact value of the state
+    public static final int LOWER = 1;  // The score is a lower bound, the search failed high
+    public static final int UPPER = 2;  // The score is an upper bound, the search failed low
+
+    /** The depth of a result that did not use the evaluation function anywhere, and so holds at any depth */
+    public static final int SOLVED = 0xFF;
+
+    /** How a store decides whether to overwrite the entry already in its slot */
+    public enum Replacement {
+        /** Always overwrite */
+        ALWAYS,
+        /** Keep an entry of the current search that was searched deeper than the new one */
+        DEPTH_PREFERRED
+    }
+
+    /** The result of a successful probe */
+    public static class Entry {
+        public int depth;
+        public int bound;
+        public double score;
+        public int move;    // Index col*size+row of the best move, or -1 if none is known
+    }
+
+    private final long[] keys;
+    private final long[] data;      // generation << 24 | (move + 1) << 10 | bound << 8 | depth
+    private final long[] scores;    // Double.doubleToRawLongBits of the score
+    private final int mask;
+    private final Replacement replacement;
+    private int generation;
+
+    /**
+     * Creates a table with 2^bits entries.
+     */
+    public TranspositionTable(int bits, Replacement replacement) {
+        int entries = 1 << bits;
+        keys = new long[entries];
+        data = new long[entries];
+        scores = new long[entries];
+        mask = entries - 1;
+        this.replacement = replacement;
+    }
+
+    /**
+     * Marks the start of a new search, so that entries of earlier searches are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        java.util.Arrays.fill(keys, 0);
+        java.util.Arrays.fill(data, 0);
+        java.util.Arrays.fill(scores, 0);
+    }
+
+    /**
+     * Looks up the given hash. If it is found, the entry is copied into out and true is returned.
+     */
+    public boolean probe(long hash, Entry out) {
+        int i = (int) hash & mask;
+        long d = data[i];
+        long sc = scores[i];
+        if ((keys[i] ^ d ^ sc) != hash || d == 0) return false;
+        out.depth = (int) (d & 0xFF);
+        out.bound = (int) (d >>> 8) & 0x3;
+        out.move = (int) ((d >>> 10) & 0x3FFF) - 1;
+        out.score = Double.longBitsToDouble(sc);
+        return true;
+    }
+
+    /**
+     * Stores the result of searching the state with the given hash to the given remaining depth.
+     * @param move Index col*size+row of the best move, or -1 if none.
+     */
+    public void store(long hash, int depth, int bound, double score, int move) {
+        int i = (int) hash & mask;
+        long old = data[i];
+        if (replacement == Replacement.DEPTH_PREFERRED && old != 0
+                && (keys[i] ^ old ^ scores[i]) != hash
+                && (int) (old >>> 24) == generation
+                && (int) (old & 0xFF) > depth) {
+            return;
+        }
+        long d = (long) generation << 24 | (long) (move + 1) << 10 | (long) bound << 8 | Math.min(depth, 0xFF);
+        long sc = Double.doubleToRawLongBits(score);
+        data[i] = d;
+        scores[i] = sc;
+        keys[i] = hash ^ d ^ sc;
+    }
+}
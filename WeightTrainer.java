@@ -0,0 +1,224 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Offline trainer for the weights of {@link PatternEvaluator}, in two steps:
+ * <ul>
+ * <li>generate: BetterAI plays games against itself on all cores, each starting with random moves. When
+ * few places are left the game is solved exactly with {@link EndgameSolver}; every position before that
+ * is labelled with the exact outcome of the solved position, and every position after it with its own
+ * exact score. The positions are written to one shard file per thread.</li>
+ * <li>train: fits the weights by stochastic gradient descent on the squared error, streaming the shard
+ * files from disk, one thread per shard, all updating the same weights (races between the threads only
+ * lose an occasional update). Only the weights are kept in memory, so the number of positions is only
+ * limited by the disk. The weights file can then be loaded by BetterAI (betterai.weights).</li>
+ * </ul>
+ * A shard is a sequence of 18 byte records: the long black and white bitboards and the short score, the
+ * final disc difference black - white with perfect play.
+ */
+public class WeightTrainer
+{
+    public static final int RECORD_SIZE = 18;
+    public static final int DEFAULT_PHASES = 12;
+
+    /**
+     * Valid arguments: generate dir games [depth] [solveEmpties] [threads]
+     *              or: train weights epochs dir [rate] [threads]
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int threadsDefault = Runtime.getRuntime().availableProcessors();
+        if (args.length >= 3 && args[0].equals("generate")) {
+            File dir = new File(args[1]);
+            int games = Integer.parseInt(args[2]);
+            int depth = args.length >= 4 ? Integer.parseInt(args[3]) : 4;
+            int solveEmpties = args.length >= 5 ? Integer.parseInt(args[4]) : 14;
+            int threads = args.length >= 6 ? Integer.parseInt(args[5]) : threadsDefault;
+            long positions = generate(dir, games, depth, solveEmpties, threads);
+            System.out.println("Wrote " + positions + " positions of " + games + " games to " + dir);
+        } else if (args.length >= 4 && args[0].equals("train")) {
+            File weights = new File(args[1]);
+            int epochs = Integer.parseInt(args[2]);
+            File dir = new File(args[3]);
+            double rate = args.length >= 5 ? Double.parseDouble(args[4]) : 0.01;
+            int threads = args.length >= 6 ? Integer.parseInt(args[5]) : threadsDefault;
+            PatternEvaluator evaluator = weights.exists() ? PatternEvaluator.load(weights) : new PatternEvaluator(DEFAULT_PHASES);
+            train(evaluator, shards(dir), epochs, rate, threads);
+            evaluator.write(weights);
+            System.out.println("Wrote " + weights);
+        } else {
+            System.err.println("Usage: java WeightTrainer generate dir games [depth] [solveEmpties] [threads]");
+            System.err.println("       java WeightTrainer train weights epochs dir [rate] [threads]");
+            System.err.println("\tdir\t\t - Directory of the position shards.");
+            System.err.println("\tgames\t\t - Number of self-play games.");
+            System.err.println("\tdepth\t\t - Search depth of the self-play games. Defaults to 4.");
+            System.err.println("\tsolveEmpties\t - Empty places at which games are solved exactly. Defaults to 14.");
+            System.err.println("\tweights\t\t - The weights file, which is created or trained further.");
+            System.err.println("\tepochs\t\t - Number of passes over all positions.");
+            System.err.println("\trate\t\t - Learning rate. Defaults to 0.01.");
+            System.err.println("\tthreads\t\t - Defaults to the number of processors.");
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Plays the given number of self-play games on the given number of threads and writes the labelled
+     * positions to the shards dir/positions-&lt;thread&gt;.bin, appending to existing shards. Returns the number
+     * of positions written.
+     */
+    public static long generate(File dir, int games, int depth, int solveEmpties, int threads) throws Exception {
+        dir.mkdirs();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(new OutputStream() { // BetterAI's own output is not wanted here
+            public void write(int b) {}
+        }));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayList<Future<Long>> results = new ArrayList<Future<Long>>();
+            for (int t = 0; t < threads; t++) {
+                int shard = t;
+                int shardGames = games / threads + (t < games % threads ? 1 : 0);
+                results.add(pool.submit(() -> generateShard(new File(dir, "positions-" + shard + ".bin"), shardGames,
+                        depth, solveEmpties, new Random(System.nanoTime() ^ shard))));
+            }
+            long positions = 0;
+            for (Future<Long> result : results) positions += result.get();
+            return positions;
+        } finally {
+            pool.shutdown();
+            System.setOut(out);
+        }
+    }
+
+    private static long generateShard(File file, int games, int depth, int solveEmpties, Random random) throws IOException {
+        BetterAI ai = new BetterAI(0, depth, 1, false);
+        ai.setOpeningBook(null);
+        ai.setEndgameEmpties(0);
+        EndgameSolver solver = new EndgameSolver();
+        long positions = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), 1 << 16))) {
+            ArrayList<long[]> game = new ArrayList<long[]>();
+            for (int g = 0; g < games; g++) {
+                game.clear();
+                BitBoardState s = new BitBoardState(1);
+                int randomPlies = 4 + random.nextInt(8);
+                // Play until the position can be solved
+                for (int ply = 0; 64 - Long.bitCount(s.getBlack() | s.getWhite()) > solveEmpties && !s.isFinished(); ply++) {
+                    if (!s.hasLegalMove()) {
+                        s.changePlayer();
+                        continue;
+                    }
+                    game.add(new long[]{s.getBlack(), s.getWhite()});
+                    ArrayList<Position> moves = s.legalMoves();
+                    s.insertToken(ply < randomPlies ? moves.get(random.nextInt(moves.size())) : ai.decideMove(s));
+                }
+                // The outcome with perfect play from here labels the positions played so far
+                int outcome = blackScore(solver, s);
+                for (long[] position : game) write(out, position[0], position[1], outcome);
+                positions += game.size();
+                // and the rest of the game is played perfectly, labelling every position with its own score
+                while (!s.isFinished()) {
+                    if (!s.hasLegalMove()) {
+                        s.changePlayer();
+                        continue;
+                    }
+                    EndgameSolver.Result result = solver.solve(s, Long.MAX_VALUE);
+                    write(out, s.getBlack(), s.getWhite(), s.getPlayerInTurn() == 1 ? result.score : -result.score);
+                    positions++;
+                    s.insertToken(new Position(result.move / 8, result.move % 8));
+                }
+            }
+        }
+        return positions;
+    }
+
+    // The exact final disc difference black - white of the position
+    private static int blackScore(EndgameSolver solver, BitBoardState s) {
+        int score = solver.solve(s, Long.MAX_VALUE).score;
+        return s.getPlayerInTurn() == 1 ? score : -score;
+    }
+
+    private static void write(DataOutputStream out, long black, long white, int score) throws IOException {
+        out.writeLong(black);
+        out.writeLong(white);
+        out.writeShort(score);
+    }
+
+    /**
+     * Returns the shard files in the given directory.
+     */
+    public static File[] shards(File dir) throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.startsWith("positions-") && name.endsWith(".bin"));
+        if (files == null || files.length == 0) throw new IOException("No position shards in " + dir);
+        return files;
+    }
+
+    /**
+     * Trains the weights of the evaluator for the given number of epochs over all positions in the shards,
+     * printing the mean squared error (in discs) of every epoch.
+     */
+    public static void train(PatternEvaluator evaluator, File[] shards, int epochs, double rate, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int epoch = 1; epoch <= epochs; epoch++) {
+                ArrayList<Future<double[]>> results = new ArrayList<Future<double[]>>();
+                for (File shard : shards) results.add(pool.submit(() -> trainShard(evaluator, shard, rate)));
+                double squaredError = 0;
+                long positions = 0;
+                for (Future<double[]> result : results) {
+                    squaredError += result.get()[0];
+                    positions += (long) result.get()[1];
+                }
+                System.out.println("Epoch " + epoch + ": " + positions + " positions, mean squared error "
+                        + squaredError / Math.max(1, positions));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // One pass over a shard; returns the sum of the squared errors before the updates and the number of positions
+    private static double[] trainShard(PatternEvaluator evaluator, File shard, double rate) throws IOException {
+        int[] indices = new int[PatternEvaluator.INSTANCES];
+        double step = rate / PatternEvaluator.INSTANCES;
+        double squaredError = 0;
+        long positions = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(shard), 1 << 16))) {
+            while (true) {
+                long black;
+                try {
+                    black = in.readLong();
+                } catch (EOFException end) {
+                    break;
+                }
+                long white = in.readLong();
+                int score = in.readShort();
+
+                PatternEvaluator.indices(black, white, indices);
+                int phase = evaluator.phase(Long.bitCount(black | white));
+                double error = score - evaluator.score(indices, phase);
+                float delta = (float) (step * error);
+                for (int i = 0; i < indices.length; i++)
+                    evaluator.getWeights(phase, PatternEvaluator.INSTANCE_TYPE[i])[indices[i]] += delta;
+                squaredError += error * error;
+                positions++;
+            }
+        }
+        return new double[]{squaredError, positions};
+    }
+}
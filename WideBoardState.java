@@ -0,0 +1,329 @@
+import java.util.ArrayList;
+
+/**
+ * Implementation of {@link GameState} for boards of any even size up to 64x64 that keeps black and white
+ * tokens as bitsets of one 64-bit word per column, where bit row of word col is set if (col, row) holds a
+ * token. Legal moves are generated for a whole board at once: along the columns with Kogge-Stone fills
+ * inside every word, and along the rows and diagonals with one pass over the columns in each direction
+ * that carries the lines of opponent tokens from one column to the next. Only the moves of a few columns
+ * have to be turned by a move, so making and taking back moves walks the lines from the place of the move.
+ *
+ * The undo record is the same as that of the array based implementation: the number of tokens captured in
+ * each of the 8 directions, one byte each.
+ */
+public class WideBoardState extends GameState {
+	static final int MAX_SIZE = 64;
+
+	private final long rowMask;		// The bits of the rows of a column
+	private final long[] black; 	// Bit row of word col is set if (col, row) holds a black token (player 1)
+	private final long[] white; 	// Bit row of word col is set if (col, row) holds a white token (player 2)
+	private final long[] moves; 	// Scratch space for the moves of a player, one word per column
+
+	//************ Constructors ****************//
+	/**
+	 * Initializes a board with the four tokens in the middle, as {@link GameState#GameState(int, int)}.
+	 * @param size Number of columns (and number of rows) in the board. Should be an even number of at most 64.
+	 * @param playerToStart The player who will go first. Should be 1 (black) or 2 (white).
+	 */
+	public WideBoardState(int size, int playerToStart){
+		this(size);
+		int half = size / 2;
+		black[half-1] |= 1L << (half-1);
+		black[half] |= 1L << half;
+		white[half-1] |= 1L << half;
+		white[half] |= 1L << (half-1);
+		currentPlayer = playerToStart;
+		hash = computeHash();
+	}
+
+	/**
+	 * Constructs a new game state that equals the one represented by the supplied board and player.
+	 * @param board Square array of even size of at most 64 with values 0 (empty), 1 (black) or 2 (white).
+	 * @param playerToTakeTurn The player who will be the first to take a turn. Should be 1 (black) or 2 (white)
+	 */
+	public WideBoardState(int[][] board, int playerToTakeTurn){
+		this(board.length);
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( board[i][j] == 1 )
+					black[i] |= 1L << j;
+				else if ( board[i][j] == 2 )
+					white[i] |= 1L << j;
+			}
+		}
+		currentPlayer = playerToTakeTurn;
+		hash = computeHash();
+	}
+
+	/**
+	 * Constructs a new game state with a copy of the tokens of other.
+	 */
+	private WideBoardState(WideBoardState other){
+		this(other.size);
+		System.arraycopy(other.black, 0, black, 0, size);
+		System.arraycopy(other.white, 0, white, 0, size);
+		currentPlayer = other.currentPlayer;
+		hash = other.hash;
+	}
+
+	private WideBoardState(int size){
+		super(size);
+		if ( size > MAX_SIZE )
+			throw new IllegalArgumentException("Boards of more than " + MAX_SIZE + " columns are not supported: " + size);
+		rowMask = size == MAX_SIZE ? ~0L : (1L << size) - 1;
+		black = new long[size];
+		white = new long[size];
+		moves = new long[size];
+	}
+
+	@Override
+	public GameState copy(){
+		return new WideBoardState(this);
+	}
+
+	@Override
+	protected long computeHash(){
+		long h = currentPlayer == 2 ? Zobrist.SIDE : 0;
+		for (int col = 0; col < size; col++){
+			for (long b = black[col]; b != 0; b &= b - 1)
+				h ^= zobrist.black[col*size + Long.numberOfTrailingZeros(b)];
+			for (long w = white[col]; w != 0; w &= w - 1)
+				h ^= zobrist.white[col*size + Long.numberOfTrailingZeros(w)];
+		}
+		return h;
+	}
+
+	//************ Getter methods *******************//
+	/**
+	 * Returns a new array with the tokens of this state. Changing it does not change the state.
+	 */
+	@Override
+	public int[][] getBoard(){
+		int[][] board = new int[size][size];
+		for (int i = 0; i < size; i++){
+			for (int j = 0; j < size; j++){
+				if ( (black[i] >>> j & 1) != 0 )
+					board[i][j] = 1;
+				else if ( (white[i] >>> j & 1) != 0 )
+					board[i][j] = 2;
+			}
+		}
+		return board;
+	}
+
+	//************* Methods ****************//
+	@Override
+	public boolean isFinished(){
+		return !anyMoves(black, white) && !anyMoves(white, black);
+	}
+
+	@Override
+	public int[] countTokens(){
+		int tokens1 = 0;
+		int tokens2 = 0;
+		for (int col = 0; col < size; col++){
+			tokens1 += Long.bitCount(black[col]);
+			tokens2 += Long.bitCount(white[col]);
+		}
+		return new int[]{tokens1, tokens2};
+	}
+
+	/**
+	 * Returns the number of legal moves of the given player, whether or not it is in turn.
+	 */
+	public int countMoves(int player){
+		long[] m = player == 1 ? moves(black, white) : moves(white, black);
+		int count = 0;
+		for (int col = 0; col < size; col++)
+			count += Long.bitCount(m[col]);
+		return count;
+	}
+
+	@Override
+	public long makeMove(Position place){
+		if ( place.col < 0 || place.row < 0 || place.col >= size || place.row >= size ) //not a position on the board
+			return 0;
+		if ( ((black[place.col] | white[place.col]) >>> place.row & 1) != 0 ) // The position is not empty
+			return 0;
+
+		long[] own = currentPlayer == 1 ? black : white;
+		long[] opp = currentPlayer == 1 ? white : black;
+		long undo = 0;
+		int direction = 0;
+		for (int deltaX = -1; deltaX <= 1; deltaX++){
+			for (int deltaY = -1; deltaY <= 1; deltaY++){
+				if ( deltaX == 0 && deltaY == 0 )
+					continue;
+				int captives = captureInDirection(own, opp, place.col, place.row, deltaX, deltaY);
+				if ( captives > 0 ){
+					turn(own, opp, place.col, place.row, deltaX, deltaY, captives, 3-currentPlayer, currentPlayer);
+					undo |= (long) captives << (8*direction);
+				}
+				direction++;
+			}
+		}
+
+		if ( undo != 0 ){
+			own[place.col] |= 1L << place.row;
+			int index = place.col*size + place.row;
+			hash ^= zobrist.key(currentPlayer, index);
+			if ( listener != null )
+				listener.placeChanged(index, 0, currentPlayer);
+			changePlayer();
+		}
+		return undo;
+	}
+
+	/**
+	 * Takes back the move at the given place, which must be the last move made in this state.
+	 * @param place The place given to {@link #makeMove(Position)}
+	 * @param undo The record returned by {@link #makeMove(Position)}
+	 */
+	@Override
+	public void unmakeMove(Position place, long undo){
+		changePlayer();
+		long[] own = currentPlayer == 1 ? black : white;
+		long[] opp = currentPlayer == 1 ? white : black;
+		int direction = 0;
+		for (int deltaX = -1; deltaX <= 1; deltaX++){
+			for (int deltaY = -1; deltaY <= 1; deltaY++){
+				if ( deltaX == 0 && deltaY == 0 )
+					continue;
+				int captives = (int) (undo >>> (8*direction)) & 0xFF;
+				if ( captives > 0 )
+					turn(opp, own, place.col, place.row, deltaX, deltaY, captives, currentPlayer, 3-currentPlayer);
+				direction++;
+			}
+		}
+		own[place.col] &= ~(1L << place.row);
+		int index = place.col*size + place.row;
+		hash ^= zobrist.key(currentPlayer, index);
+		if ( listener != null )
+			listener.placeChanged(index, currentPlayer, 0);
+	}
+
+	/**
+	 * Returns the number of tokens in opp that the owner of own captures in the direction (deltaX, deltaY)
+	 * by putting a token at the empty place (col, row).
+	 */
+	private int captureInDirection(long[] own, long[] opp, int col, int row, int deltaX, int deltaY){
+		int captured = 0;
+		int cc = col + deltaX;
+		int rr = row + deltaY;
+		while ( 0 <= cc && cc < size && 0 <= rr && rr < size && (opp[cc] >>> rr & 1) != 0 ){
+			cc += deltaX;
+			rr += deltaY;
+			captured++;
+		}
+		if ( captured > 0 && 0 <= cc && cc < size && 0 <= rr && rr < size && (own[cc] >>> rr & 1) != 0 )
+			return captured;
+		return 0;
+	}
+
+	/**
+	 * Moves the given number of tokens in the direction (deltaX, deltaY) from (col, row) from the bitset from
+	 * to the bitset to, and tells the listener that they changed from player fromPlayer to toPlayer.
+	 */
+	private void turn(long[] to, long[] from, int col, int row, int deltaX, int deltaY, int count,
+			int fromPlayer, int toPlayer){
+		for (int i = 1; i <= count; i++){
+			int cc = col + deltaX*i;
+			int rr = row + deltaY*i;
+			long b = 1L << rr;
+			from[cc] &= ~b;
+			to[cc] |= b;
+			int index = cc*size + rr;
+			hash ^= zobrist.flip[index];
+			if ( listener != null )
+				listener.placeChanged(index, fromPlayer, toPlayer);
+		}
+	}
+
+	@Override
+	public boolean hasLegalMove(){
+		return currentPlayer == 1 ? anyMoves(black, white) : anyMoves(white, black);
+	}
+
+	/**
+	 * Generates the legal moves in the same order as the array based implementation. The frontier is not
+	 * needed here, as all moves are found at once with a few passes over the columns.
+	 */
+	@Override
+	protected ArrayList<Position> generateMoves(){
+		long[] m = currentPlayer == 1 ? moves(black, white) : moves(white, black);
+		ArrayList<Position> legalPlaces = new ArrayList<Position>();
+		for (int col = 0; col < size; col++){
+			for (long bits = m[col]; bits != 0; bits &= bits - 1)
+				legalPlaces.add(Position.at(col, Long.numberOfTrailingZeros(bits)));
+		}
+		return legalPlaces;
+	}
+
+	@Override
+	public void legalMoves(MoveList moves){
+		moves.clear();
+		long[] m = currentPlayer == 1 ? moves(black, white) : moves(white, black);
+		for (int col = 0; col < size; col++){
+			for (long bits = m[col]; bits != 0; bits &= bits - 1)
+				moves.add(col*size + Long.numberOfTrailingZeros(bits));
+		}
+	}
+
+	//************* Bit operations ****************//
+	private boolean anyMoves(long[] own, long[] opp){
+		long[] m = moves(own, opp);
+		for (int col = 0; col < size; col++){
+			if ( m[col] != 0 )
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the legal moves of the player owning the tokens in own, one word per column. The array is
+	 * reused by the next call.
+	 */
+	private long[] moves(long[] own, long[] opp){
+		long[] m = moves;
+		// Along the columns: within every word
+		for (int col = 0; col < size; col++){
+			long o = own[col];
+			long p = opp[col];
+			long empty = ~(o | p) & rowMask;
+			long up = o;
+			long down = o;
+			long proUp = p;
+			long proDown = p;
+			for (int step = 1; step < size; step <<= 1){
+				up |= proUp & (up << step);
+				proUp &= proUp << step;
+				down |= proDown & (down >>> step);
+				proDown &= proDown >>> step;
+			}
+			m[col] = (((up & p) << 1) | ((down & p) >>> 1)) & empty;
+		}
+		// Along the rows and diagonals: the lines of opponent tokens that start at an own token and end in
+		// the previous column, going up, straight and down, are carried from column to column
+		long previous = 0, carryUp = 0, carry = 0, carryDown = 0;
+		for (int col = 0; col < size; col++){
+			long o = own[col];
+			long p = opp[col];
+			m[col] |= ((carryUp << 1) | carry | (carryDown >>> 1)) & ~(o | p) & rowMask;
+			carryUp = p & ((previous | carryUp) << 1);
+			carry = p & (previous | carry);
+			carryDown = p & ((previous | carryDown) >>> 1);
+			previous = o;
+		}
+		previous = carryUp = carry = carryDown = 0;
+		for (int col = size - 1; col >= 0; col--){
+			long o = own[col];
+			long p = opp[col];
+			m[col] |= ((carryUp << 1) | carry | (carryDown >>> 1)) & ~(o | p) & rowMask;
+			carryUp = p & ((previous | carryUp) << 1);
+			carry = p & (previous | carry);
+			carryDown = p & ((previous | carryDown) >>> 1);
+			previous = o;
+		}
+		return m;
+	}
+}
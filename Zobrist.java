@@ -0,0 +1,59 @@
+/**
+ * Random keys for Zobrist hashing of game states. The hash of a state is the exclusive or of the key of
+ * every token on the board and, if player 2 (white) is in turn, the key {@link #SIDE}. Making a move then
+ * only changes the hash by the keys of the places that changed.
+ * The keys are derived from a fixed seed, so a state has the same hash in every run of the program and in
+ * every implementation of {@link GameState}, which makes hashes usable as keys in files.
+ */
+public class Zobrist {
+	/** Key for player 2 (white) being in turn */
+	public static final long SIDE = mix(0);
+
+	private static final Zobrist[] cache = new Zobrist[64];
+
+	final long[] black; 	// Key of a black token on the place with index col*size+row
+	final long[] white; 	// Key of a white token on the place with index col*size+row
+	final long[] flip;  	// black ^ white, i.e. the change of the hash when the token on the place is turned
+
+	private Zobrist(int size){
+		int places = size * size;
+		black = new long[places];
+		white = new long[places];
+		flip = new long[places];
+		for (int i = 0; i < places; i++){
+			black[i] = mix(2 * i + 1);
+			white[i] = mix(2 * i + 2);
+			flip[i] = black[i] ^ white[i];
+		}
+	}
+
+	/**
+	 * Returns the keys for a board of the given size.
+	 */
+	public static Zobrist forSize(int size){
+		if ( size >= cache.length )
+			return new Zobrist(size);
+		synchronized (cache){
+			if ( cache[size] == null )
+				cache[size] = new Zobrist(size);
+			return cache[size];
+		}
+	}
+
+	/**
+	 * Returns the key of a token of the given player (1 or 2) on the place with the given index.
+	 */
+	public long key(int player, int place){
+		return player == 1 ? black[place] : white[place];
+	}
+
+	/**
+	 * The SplitMix64 finalizer, applied to the n'th multiple of the golden ratio.
+	 */
+	private static long mix(long n){
+		long z = 0x5DEECE66DL + (n + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,103 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Random;
+
+import othello.bench.BenchmarkTarget;
+
+/**
+ * The benchmarked operations on the game classes, for the benchmarks in othello.bench. The corpus is made by
+ * random play from the start position with a fixed seed, so it is the same in every run: positions after
+ * 4 to 8 plies for the opening, 24 to 32 plies for the midgame and 46 to 50 plies for the endgame on the 8x8
+ * board. On other sizes the midgame and endgame plies are scaled by the number of empty places at the start.
+ */
+public class GameTarget implements BenchmarkTarget {
+
+    private GameState[] positions;
+    private Position[] firstMoves;      // A legal move in each position
+    private final MoveList moves = new MoveList();
+    private BetterAI ai;
+    private PrintStream out;
+
+    public void setUp(String engine, String phase, int depth, int size) {
+        int minPlies = phase.equals("opening") ? 4 : phase.equals("midgame") ? 24 : 46;
+        int maxPlies = phase.equals("opening") ? 8 : phase.equals("midgame") ? 32 : 50;
+        if (!phase.equals("opening")) {
+            minPlies = minPlies * (size * size - 4) / 60;
+            maxPlies = maxPlies * (size * size - 4) / 60;
+        }
+        Random random = new Random(phase.hashCode());
+        positions = new GameState[POSITIONS];
+        firstMoves = new Position[POSITIONS];
+        int i = 0;
+        while (i < POSITIONS) {
+            GameState s = GameState.newGame(size, 1);
+            int plies = minPlies + random.nextInt(maxPlies - minPlies + 1);
+            for (int ply = 0; ply < plies && !s.isFinished(); ply++) {
+                ArrayList<Position> moves = s.legalMoves();
+                if (moves.isEmpty()) s.changePlayer();
+                else s.insertToken(moves.get(random.nextInt(moves.size())));
+            }
+            if (s.legalMoves().isEmpty()) continue;
+            firstMoves[i] = s.legalMoves().get(0);
+            // Fresh states, without the moves that legalMoves() cached in s
+            positions[i] = engine.equals("array") ? new GameState(s.getBoard(), s.getPlayerInTurn()) : s.copy();
+            i++;
+        }
+
+        ai = new BetterAI(0, depth, 1, false, new TranspositionTable(16, TranspositionTable.Replacement.DEPTH_PREFERRED));
+        // decideMove prints its progress
+        out = System.out;
+        System.setOut(new PrintStream(new OutputStream() {
+            public void write(int b) {}
+        }));
+    }
+
+    public void tearDown() {
+        System.setOut(out);
+    }
+
+    public int legalMoves(int position) {
+        positions[position].legalMoves(moves);
+        return moves.size();
+    }
+
+    public boolean insertToken(int position) {
+        return positions[position].copy().insertToken(firstMoves[position]);
+    }
+
+    public boolean makeUnmakeMove(int position) {
+        GameState s = positions[position];
+        long undo = s.makeMove(firstMoves[position]);
+        s.unmakeMove(firstMoves[position], undo);
+        return undo != 0;
+    }
+
+    public boolean isFinished(int position) {
+        return positions[position].isFinished();
+    }
+
+    public int countTokens(int position) {
+        return positions[position].countTokens()[0];
+    }
+
+    public double hUtility(int position) {
+        return ai.hUtility(positions[position]);
+    }
+
+    public Object prioritizeMoves(int position) {
+        return ai.prioritizeMoves(positions[position]);
+    }
+
+    public void newSearch() {
+        ai.getTranspositionTable().clear();
+    }
+
+    public Object decideMove(int position) {
+        return ai.decideMove(positions[position]);
+    }
+
+    public long lastNodes() {
+        return ai.getNodes();
+    }
+}
@@ -0,0 +1,54 @@
+package othello.bench;
+
+/**
+ * The operations measured by the benchmarks, on a fixed corpus of positions. Implemented by GameTarget in the
+ * default package, which is the only place the game classes can be used from.
+ */
+public interface BenchmarkTarget {
+
+    /** Number of positions in every phase of the corpus */
+    int POSITIONS = 16;
+
+    /**
+     * Sets up the corpus of 8x8 positions for the given engine ("bitboard" or "array") and phase ("opening",
+     * "midgame" or "endgame"), and a BetterAI searching to the given depth.
+     */
+    default void setUp(String engine, String phase, int depth) {
+        setUp(engine, phase, depth, 8);
+    }
+
+    /**
+     * As setUp(engine, phase, depth) on a board of the given size; "bitboard" is the fastest engine for the
+     * size, i.e. the one GameState.newGame chooses.
+     */
+    void setUp(String engine, String phase, int depth, int size);
+
+    /** Restores what setUp changed */
+    void tearDown();
+
+    /**
+     * Generates the legal moves into a reused list and returns their number. The states of the corpus never
+     * cache their moves, so every call runs the move generator.
+     */
+    int legalMoves(int position);
+
+    boolean insertToken(int position);
+
+    boolean makeUnmakeMove(int position);
+
+    boolean isFinished(int position);
+
+    int countTokens(int position);
+
+    double hUtility(int position);
+
+    Object prioritizeMoves(int position);
+
+    /** Clears the transposition table, so that every search starts from scratch */
+    void newSearch();
+
+    Object decideMove(int position);
+
+    /** Number of nodes searched by the last decideMove */
+    long lastNodes();
+}
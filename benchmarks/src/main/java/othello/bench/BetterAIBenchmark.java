@@ -0,0 +1,75 @@
+package othello.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the evaluation function and the move ordering of BetterAI, and the time of a complete
+ * decideMove to a fixed depth, on the bitboard engine. Every decideMove starts with a cleared transposition
+ * table; the table is cleared in the benchmark itself, as an invocation level setup would distort the
+ * short benchmarks.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BetterAIBenchmark {
+
+    @Param({"opening", "midgame", "endgame"})
+    public String phase;
+
+    @Param({"6"})
+    public int depth;
+
+    private BenchmarkTarget target;
+    private int position;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        target = (BenchmarkTarget) Class.forName("GameTarget").getConstructor().newInstance();
+        target.setUp("bitboard", phase, depth);
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.tearDown();
+    }
+
+    private int next() {
+        return position = (position + 1) % BenchmarkTarget.POSITIONS;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public double hUtility() {
+        return target.hUtility(next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object prioritizeMoves() {
+        return target.prioritizeMoves(next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object decideMove() {
+        target.newSearch();
+        return target.decideMove(next());
+    }
+}
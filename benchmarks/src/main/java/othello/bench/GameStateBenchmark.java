@@ -0,0 +1,78 @@
+package othello.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the GameState operations used at every search node, for both implementations and for
+ * positions from the opening, the midgame and the endgame. Every call works on the next position of the corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameStateBenchmark {
+
+    @Param({"bitboard", "array"})
+    public String engine;
+
+    @Param({"opening", "midgame", "endgame"})
+    public String phase;
+
+    private BenchmarkTarget target;
+    private int position;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        target = (BenchmarkTarget) Class.forName("GameTarget").getConstructor().newInstance();
+        target.setUp(engine, phase, 1);
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.tearDown();
+    }
+
+    private int next() {
+        return position = (position + 1) % BenchmarkTarget.POSITIONS;
+    }
+
+    @Benchmark
+    public int legalMoves() {
+        return target.legalMoves(next());
+    }
+
+    @Benchmark
+    public boolean insertToken() {
+        return target.insertToken(next());
+    }
+
+    @Benchmark
+    public boolean makeUnmakeMove() {
+        return target.makeUnmakeMove(next());
+    }
+
+    @Benchmark
+    public boolean isFinished() {
+        return target.isFinished(next());
+    }
+
+    @Benchmark
+    public int countTokens() {
+        return target.countTokens(next());
+    }
+}
@@ -0,0 +1,93 @@
+package othello.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * How the engines scale with the board size: throughput of move generation and of making and taking back a
+ * move, and the nodes per second of decideMove to a fixed depth, on midgame positions of every size. The
+ * nodes per second are reported as the secondary result "nodes" of the search benchmark.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LargeBoardBenchmark {
+
+    @Param({"8", "10", "12", "16"})
+    public int size;
+
+    @Param({"bitboard", "array"})
+    public String engine;
+
+    @Param({"4"})
+    public int depth;
+
+    /** The nodes searched, counted per second by JMH */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Nodes {
+        public long nodes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            nodes = 0;
+        }
+    }
+
+    private BenchmarkTarget target;
+    private int position;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        target = (BenchmarkTarget) Class.forName("GameTarget").getConstructor().newInstance();
+        target.setUp(engine, "midgame", depth, size);
+    }
+
+    @TearDown
+    public void tearDown() {
+        target.tearDown();
+    }
+
+    private int next() {
+        return position = (position + 1) % BenchmarkTarget.POSITIONS;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int legalMoves() {
+        return target.legalMoves(next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public boolean makeUnmakeMove() {
+        return target.makeUnmakeMove(next());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Object search(Nodes nodes) {
+        target.newSearch();
+        Object move = target.decideMove(next());
+        nodes.nodes += target.lastNodes();
+        return move;
+    }
+}